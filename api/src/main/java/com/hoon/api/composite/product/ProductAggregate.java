@@ -11,6 +11,7 @@ public class ProductAggregate {
     private final List<RecommendationSummary> recommendations;
     private final List<ReviewSummary> reviews;
     private final ServiceAddresses serviceAddresses;
+    private final boolean partial;
 
     public ProductAggregate() {
         productId = 0;
@@ -19,6 +20,7 @@ public class ProductAggregate {
         recommendations = null;
         reviews = null;
         serviceAddresses = null;
+        partial = false;
     }
 
     public ProductAggregate(
@@ -29,12 +31,25 @@ public class ProductAggregate {
         List<ReviewSummary> reviews,
         ServiceAddresses serviceAddresses) {
 
+        this(productId, name, weight, recommendations, reviews, serviceAddresses, false);
+    }
+
+    public ProductAggregate(
+        int productId,
+        String name,
+        int weight,
+        List<RecommendationSummary> recommendations,
+        List<ReviewSummary> reviews,
+        ServiceAddresses serviceAddresses,
+        boolean partial) {
+
         this.productId = productId;
         this.name = name;
         this.weight = weight;
         this.recommendations = recommendations;
         this.reviews = reviews;
         this.serviceAddresses = serviceAddresses;
+        this.partial = partial;
     }
 
     public int getProductId() {
@@ -60,4 +75,11 @@ public class ProductAggregate {
     public ServiceAddresses getServiceAddresses() {
         return serviceAddresses;
     }
+
+    /**
+     * @return true if the recommendations or the reviews could not be retrieved and are left empty
+     */
+    public boolean isPartial() {
+        return partial;
+    }
 }
@@ -5,8 +5,11 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Api("REST API for composite product information.")
 public interface ProductCompositeService {
     /**
@@ -28,12 +31,27 @@ public interface ProductCompositeService {
     @PostMapping(
             value    = "/product-composite",
             consumes = "application/json")
-    void createCompositeProduct(@RequestBody ProductAggregate body);
+    Mono<Void> createCompositeProduct(@RequestBody ProductAggregate body);
 
     /**
      * Sample usage: curl $HOST:$PORT/product-composite/1
      *
+     * Recommendations and reviews are paged with the same keyset cursors as the core services:
+     *
+     * curl "$HOST:$PORT/product-composite/1?afterRecommendationId=100&afterReviewId=100&limit=100"
+     *
+     * The optional parts of the aggregate are recommendations, reviews and the content of both, all included by default.
+     * Parts that are left out are not requested from the core services, e.g. only the product and the reviews without their content:
+     *
+     * curl "$HOST:$PORT/product-composite/1?include=reviews"
+     *
+     * The product itself is always returned, include=product returns nothing else.
+     *
      * @param productId
+     * @param afterRecommendationId only recommendations with a greater recommendationId are returned
+     * @param afterReviewId only reviews with a greater reviewId are returned
+     * @param limit max number of recommendations and of reviews returned, 1 - 1000
+     * @param include the optional parts to return: recommendations, reviews and content, or only the product, parts left out are null
      * @return the composite product info, if found, else null
      */
     @ApiOperation(
@@ -47,7 +65,32 @@ public interface ProductCompositeService {
     @GetMapping(
         value    = "/product-composite/{productId}",
         produces = "application/json")
-    Mono<ProductAggregate> getCompositeProduct(@PathVariable int productId);
+    Mono<ProductAggregate> getCompositeProduct(
+        @PathVariable int productId,
+        @RequestParam(value = "afterRecommendationId", required = false, defaultValue = "0") int afterRecommendationId,
+        @RequestParam(value = "afterReviewId", required = false, defaultValue = "0") int afterReviewId,
+        @RequestParam(value = "limit", required = false, defaultValue = "100") int limit,
+        @RequestParam(value = "include", required = false, defaultValue = "recommendations,reviews,content") List<String> include);
+
+    /**
+     * Sample usage: curl "$HOST:$PORT/product-composite?productIds=1,2,3"
+     *
+     * Add -H "Accept: application/x-ndjson" (or text/event-stream) to receive the aggregates one per line.
+     *
+     * @param productIds
+     * @return the composite product info of the products found, in the requested order
+     */
+    @ApiOperation(
+            value = "${api.product-composite.get-composite-products.description}",
+            notes = "${api.product-composite.get-composite-products.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "Bad Request, invalid format of the request. See response message for more information."),
+            @ApiResponse(code = 422, message = "Unprocessable entity, input parameters caused the processing to fail. See response message for more information.")
+    })
+    @GetMapping(
+        value    = "/product-composite",
+        produces = {"application/json", "application/x-ndjson", "text/event-stream"})
+    Flux<ProductAggregate> getCompositeProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
 
     /**
      * Sample usage:
@@ -64,5 +107,5 @@ public interface ProductCompositeService {
             @ApiResponse(code = 422, message = "Unprocessable entity, input parameters caused the processing to fail. See response message for more information.")
     })
     @DeleteMapping(value = "/product-composite/{productId}")
-    void deleteCompositeProduct(@PathVariable int productId);
+    Mono<Void> deleteCompositeProduct(@PathVariable int productId);
 }
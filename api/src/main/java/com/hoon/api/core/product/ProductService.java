@@ -1,8 +1,11 @@
 package com.hoon.api.core.product;
 
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface ProductService {
 
     /**
@@ -17,12 +20,24 @@ public interface ProductService {
     )
     Mono<Product> getProduct(@PathVariable int productId);
 
+    /**
+     * Sample usage: curl "$HOST:$PORT/product/batch?productIds=1,2,3"
+     *
+     * @param productIds
+     * @return the products found, products that do not exist are omitted
+     */
+    @GetMapping(
+            value = "/product/batch",
+            produces = {"application/json", "application/x-ndjson", "text/event-stream"}
+    )
+    Flux<Product> getProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
     @PostMapping(
             value = "/product",
             consumes = "application/json",
             produces = "application/json")
-    Product createProduct(@RequestBody Product body);
+    Mono<Product> createProduct(@RequestBody Product body);
 
     @DeleteMapping(value = "/product/{productId}")
-    void deleteProduct(@PathVariable int productId);
+    Mono<Void> deleteProduct(@PathVariable int productId);
 }
@@ -2,6 +2,7 @@ package com.hoon.api.core.recommendation;
 
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
@@ -9,13 +10,42 @@ public interface RecommendationService {
     /**
      * Sample usage: curl $HOST:$PORT/recommendation?productId=1
      *
+     * Add -H "Accept: application/x-ndjson" (or text/event-stream) to stream the recommendations one per line
+     * instead of buffering them into a single JSON array.
+     *
+     * Recommendations are returned in recommendationId order, at most limit at a time. To get the next page,
+     * pass the last recommendationId received as afterRecommendationId:
+     *
+     * curl "$HOST:$PORT/recommendation?productId=1&afterRecommendationId=100&limit=100"
+     *
+     * Add content=false to leave out the content, it is then not read from the database either.
+     *
      * @param productId
+     * @param afterRecommendationId only recommendations with a greater recommendationId are returned
+     * @param limit max number of recommendations returned, 1 - 1000
+     * @param content false to return the recommendations without their content
      * @return
      */
     @GetMapping(
             value    = "/recommendation",
-            produces = "application/json")
-    Flux<Recommendation> getRecommendations(@RequestParam(value = "productId", required = true) int productId);
+            produces = {"application/json", "application/x-ndjson", "text/event-stream"})
+    Flux<Recommendation> getRecommendations(
+            @RequestParam(value = "productId", required = true) int productId,
+            @RequestParam(value = "afterRecommendationId", required = false, defaultValue = "0") int afterRecommendationId,
+            @RequestParam(value = "limit", required = false, defaultValue = "100") int limit,
+            @RequestParam(value = "content", required = false, defaultValue = "true") boolean content);
+
+    /**
+     * Sample usage: curl "$HOST:$PORT/recommendation/batch?productIds=1,2,3"
+     *
+     * @param productIds
+     * @return the first 100 recommendations, as of the default limit of a single product, of each of the given products,
+     * grouped by product in the order of productIds
+     */
+    @GetMapping(
+            value    = "/recommendation/batch",
+            produces = {"application/json", "application/x-ndjson", "text/event-stream"})
+    Flux<Recommendation> getRecommendationsForProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
 
     /**
      * Sample usage:
@@ -31,7 +61,7 @@ public interface RecommendationService {
             value    = "/recommendation",
             consumes = "application/json",
             produces = "application/json")
-    Recommendation createRecommendation(@RequestBody Recommendation body);
+    Mono<Recommendation> createRecommendation(@RequestBody Recommendation body);
 
     /**
      * Sample usage:
@@ -41,5 +71,5 @@ public interface RecommendationService {
      * @param productId
      */
     @DeleteMapping(value = "/recommendation")
-    void deleteRecommendations(@RequestParam(value = "productId", required = true)  int productId);
+    Mono<Void> deleteRecommendations(@RequestParam(value = "productId", required = true)  int productId);
 }
@@ -2,6 +2,7 @@ package com.hoon.api.core.review;
 
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
@@ -10,13 +11,42 @@ public interface ReviewService {
     /**
      * Sample usage: curl $HOST:$PORT/review?productId=1
      *
+     * Add -H "Accept: application/x-ndjson" (or text/event-stream) to stream the reviews one per line
+     * instead of buffering them into a single JSON array.
+     *
+     * Reviews are returned in reviewId order, at most limit at a time. To get the next page,
+     * pass the last reviewId received as afterReviewId:
+     *
+     * curl "$HOST:$PORT/review?productId=1&afterReviewId=100&limit=100"
+     *
+     * Add content=false to leave out the content, it is then not read from the database either.
+     *
      * @param productId
+     * @param afterReviewId only reviews with a greater reviewId are returned
+     * @param limit max number of reviews returned, 1 - 1000
+     * @param content false to return the reviews without their content
      * @return
      */
     @GetMapping(
         value    = "/review",
-        produces = "application/json")
-    Flux<Review> getReviews(@RequestParam(value = "productId", required = true) int productId);
+        produces = {"application/json", "application/x-ndjson", "text/event-stream"})
+    Flux<Review> getReviews(
+        @RequestParam(value = "productId", required = true) int productId,
+        @RequestParam(value = "afterReviewId", required = false, defaultValue = "0") int afterReviewId,
+        @RequestParam(value = "limit", required = false, defaultValue = "100") int limit,
+        @RequestParam(value = "content", required = false, defaultValue = "true") boolean content);
+
+    /**
+     * Sample usage: curl "$HOST:$PORT/review/batch?productIds=1,2,3"
+     *
+     * @param productIds
+     * @return the first 100 reviews, as of the default limit of a single product, of each of the given products,
+     * grouped by product in the order of productIds
+     */
+    @GetMapping(
+        value    = "/review/batch",
+        produces = {"application/json", "application/x-ndjson", "text/event-stream"})
+    Flux<Review> getReviewsForProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
 
     /**
      * Sample usage:
@@ -32,7 +62,7 @@ public interface ReviewService {
             value    = "/review",
             consumes = "application/json",
             produces = "application/json")
-    Review createReview(@RequestBody Review body);
+    Mono<Review> createReview(@RequestBody Review body);
 
     /**
      * Sample usage:
@@ -42,6 +72,6 @@ public interface ReviewService {
      * @param productId
      */
     @DeleteMapping(value = "/review")
-    void deleteReviews(@RequestParam(value = "productId", required = true)  int productId);
+    Mono<Void> deleteReviews(@RequestParam(value = "productId", required = true)  int productId);
 
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.hoon.api.event;
 
 import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
 
 import static java.time.LocalDateTime.now;
 
@@ -8,12 +9,14 @@ public class Event<K, T> {
 
     public enum Type {CREATE, DELETE}
 
+    private long eventId;
     private Event.Type eventType;
     private K key;
     private T data;
     private LocalDateTime eventCreatedAt;
 
     public Event() {
+        this.eventId = 0;
         this.eventType = null;
         this.key = null;
         this.data = null;
@@ -21,12 +24,19 @@ public class Event<K, T> {
     }
 
     public Event(Type eventType, K key, T data) {
+        // Random and never 0, consumers skip redelivered events by their id. 0 is an event without an id.
+        long id = ThreadLocalRandom.current().nextLong();
+        this.eventId = (id == 0) ? 1 : id;
         this.eventType = eventType;
         this.key = key;
         this.data = data;
         this.eventCreatedAt = now();
     }
 
+    public long getEventId() {
+        return eventId;
+    }
+
     public Type getEventType() {
         return eventType;
     }
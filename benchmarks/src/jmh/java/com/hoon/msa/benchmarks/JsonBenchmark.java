@@ -0,0 +1,83 @@
+package com.hoon.msa.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hoon.api.composite.product.ProductAggregate;
+import com.hoon.api.composite.product.RecommendationSummary;
+import com.hoon.api.composite.product.ReviewSummary;
+import com.hoon.api.composite.product.ServiceAddresses;
+import com.hoon.api.core.product.Product;
+import com.hoon.api.event.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hoon.api.event.Event.Type.CREATE;
+
+/**
+ * Jackson serialization of the composite's responses and of the events sent to the core services.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JsonBenchmark {
+
+    private static final TypeReference<Event<Integer, Product>> PRODUCT_EVENT = new TypeReference<>() {};
+
+    @Param({"0", "10", "100"})
+    private int count;
+
+    // Registers the java.time module, like the ObjectMapper of Spring Boot
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+
+    private ProductAggregate aggregate;
+    private String aggregateJson;
+    private Event<Integer, Product> event;
+    private String eventJson;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        List<RecommendationSummary> recommendations = new ArrayList<>();
+        List<ReviewSummary> reviews = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            recommendations.add(new RecommendationSummary(i, "author " + i, i % 5, "content " + i));
+            reviews.add(new ReviewSummary(i, "author " + i, "subject " + i, "content " + i));
+        }
+        ServiceAddresses addresses = new ServiceAddresses("composite-address", "product-address", "review-address", "recommendation-address");
+        aggregate = new ProductAggregate(1, "name", 1, recommendations, reviews, addresses);
+        aggregateJson = mapper.writeValueAsString(aggregate);
+
+        event = new Event<>(CREATE, 1, new Product(1, "name", 1, null));
+        eventJson = mapper.writeValueAsString(event);
+    }
+
+    @Benchmark
+    public String serializeProductAggregate() throws JsonProcessingException {
+        return mapper.writeValueAsString(aggregate);
+    }
+
+    @Benchmark
+    public ProductAggregate deserializeProductAggregate() throws JsonProcessingException {
+        return mapper.readValue(aggregateJson, ProductAggregate.class);
+    }
+
+    @Benchmark
+    public String serializeEvent() throws JsonProcessingException {
+        return mapper.writeValueAsString(event);
+    }
+
+    @Benchmark
+    public Event<Integer, Product> deserializeEvent() throws JsonProcessingException {
+        return mapper.readValue(eventJson, PRODUCT_EVENT);
+    }
+}
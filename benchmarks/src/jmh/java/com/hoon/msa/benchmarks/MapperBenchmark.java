@@ -0,0 +1,92 @@
+package com.hoon.msa.benchmarks;
+
+import com.hoon.api.core.product.Product;
+import com.hoon.api.core.recommendation.Recommendation;
+import com.hoon.api.core.review.Review;
+import com.hoon.msa.core.product.persistence.ProductEntity;
+import com.hoon.msa.core.product.services.ProductMapper;
+import com.hoon.msa.core.recommendation.persistence.RecommendationEntity;
+import com.hoon.msa.core.recommendation.services.RecommendationMapper;
+import com.hoon.msa.core.review.persistence.ReviewEntity;
+import com.hoon.msa.core.review.services.ReviewMapper;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the MapStruct mappers of the core services, from entities to the API model and back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MapperBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int count;
+
+    private final ProductMapper productMapper = Mappers.getMapper(ProductMapper.class);
+    private final RecommendationMapper recommendationMapper = Mappers.getMapper(RecommendationMapper.class);
+    private final ReviewMapper reviewMapper = Mappers.getMapper(ReviewMapper.class);
+
+    private ProductEntity productEntity;
+    private Product product;
+    private List<RecommendationEntity> recommendationEntities;
+    private List<Recommendation> recommendations;
+    private List<ReviewEntity> reviewEntities;
+    private List<Review> reviews;
+
+    @Setup
+    public void setUp() {
+        productEntity = new ProductEntity(1, "name", 1);
+        product = productMapper.entityToApi(productEntity);
+
+        recommendationEntities = new ArrayList<>();
+        reviewEntities = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            recommendationEntities.add(new RecommendationEntity(1, i, "author " + i, i % 5, "content " + i));
+            reviewEntities.add(new ReviewEntity(1, i, "author " + i, "subject " + i, "content " + i));
+        }
+        recommendations = recommendationMapper.entityListToApiList(recommendationEntities);
+        reviews = reviewMapper.entityListToApiList(reviewEntities);
+    }
+
+    @Benchmark
+    public Product productEntityToApi() {
+        return productMapper.entityToApi(productEntity);
+    }
+
+    @Benchmark
+    public ProductEntity productApiToEntity() {
+        return productMapper.apiToEntity(product);
+    }
+
+    @Benchmark
+    public List<Recommendation> recommendationEntityListToApiList() {
+        return recommendationMapper.entityListToApiList(recommendationEntities);
+    }
+
+    @Benchmark
+    public List<RecommendationEntity> recommendationApiListToEntityList() {
+        return recommendationMapper.apiListToEntityList(recommendations);
+    }
+
+    @Benchmark
+    public List<Review> reviewEntityListToApiList() {
+        return reviewMapper.entityListToApiList(reviewEntities);
+    }
+
+    @Benchmark
+    public List<ReviewEntity> reviewApiListToEntityList() {
+        return reviewMapper.apiListToEntityList(reviews);
+    }
+}
@@ -0,0 +1,33 @@
+package com.hoon.msa.benchmarks;
+
+import com.hoon.util.http.ServiceUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The service address added to every response. The first call resolves the host name and address,
+ * later calls return the cached address.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ServiceUtilBenchmark {
+
+    private final ServiceUtil serviceUtil = new ServiceUtil("8080");
+
+    @Benchmark
+    public String getServiceAddressCached() {
+        return serviceUtil.getServiceAddress();
+    }
+
+    @Benchmark
+    public String getServiceAddressFirstCall() {
+        return new ServiceUtil("8080").getServiceAddress();
+    }
+}
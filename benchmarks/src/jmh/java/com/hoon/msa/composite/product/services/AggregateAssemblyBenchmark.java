@@ -0,0 +1,51 @@
+package com.hoon.msa.composite.product.services;
+
+import com.hoon.api.composite.product.ProductAggregate;
+import com.hoon.api.core.product.Product;
+import com.hoon.api.core.recommendation.Recommendation;
+import com.hoon.api.core.review.Review;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembly of a product aggregate from the responses of the core services,
+ * done by the composite service on every request that is not served from its cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AggregateAssemblyBenchmark {
+
+    @Param({"0", "10", "100", "1000"})
+    private int count;
+
+    private Product product;
+    private List<Recommendation> recommendations;
+    private List<Review> reviews;
+
+    @Setup
+    public void setUp() {
+        product = new Product(1, "name", 1, "product-address");
+        recommendations = new ArrayList<>();
+        reviews = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            recommendations.add(new Recommendation(1, i, "author " + i, i % 5, "content " + i, "recommendation-address"));
+            reviews.add(new Review(1, i, "author " + i, "subject " + i, "content " + i, "review-address"));
+        }
+    }
+
+    @Benchmark
+    public ProductAggregate createProductAggregate() {
+        return ProductCompositeServiceImpl.createProductAggregate(product, recommendations, reviews, "composite-address", false);
+    }
+}
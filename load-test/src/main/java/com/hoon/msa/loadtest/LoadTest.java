@@ -0,0 +1,190 @@
+package com.hoon.msa.loadtest;
+
+import com.hoon.api.composite.product.ProductAggregate;
+import com.hoon.api.composite.product.RecommendationSummary;
+import com.hoon.api.composite.product.ReviewSummary;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load generator for the product composite API, for throughput runs against a started landscape
+ * (see test-em-all.bash for correctness checks).
+ *
+ * 1. Seeds the given number of products, each with the given number of recommendations and reviews,
+ *    through POST /product-composite and waits until the last one can be read back.
+ * 2. Sends a mix of reads of the seeded products, writes of new products and deletes of the written products
+ *    at a fixed rate for the given duration.
+ * 3. Prints the throughput, latency percentiles and errors per operation, and the deletes skipped as no written
+ *    product was left to delete. Exits with 1 if the error rate is above max-error-rate.
+ *
+ * The requests are sent at the target rate whether or not earlier requests have completed (an open model),
+ * latencies are measured from the time a request should have been sent, so a stalling landscape shows up
+ * in the latencies instead of lowering the rate.
+ */
+public class LoadTest {
+    private static final long TICK_MILLIS = 10;
+
+    private final Settings settings;
+    private final WebClient client;
+
+    private final AtomicInteger nextProductId;
+    private final Queue<Integer> writtenProductIds = new ConcurrentLinkedQueue<>();
+
+    public static void main(String[] args) {
+        Settings settings = Settings.parse(args);
+        System.exit(new LoadTest(settings).run());
+    }
+
+    LoadTest(Settings settings) {
+        this.settings = settings;
+        this.nextProductId = new AtomicInteger(settings.firstProductId + settings.products);
+
+        ConnectionProvider provider = ConnectionProvider.builder("load-test")
+                .maxConnections(settings.maxInFlight)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        this.client = WebClient.builder()
+                .baseUrl("http://" + settings.host + ":" + settings.port)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(provider)))
+                .build();
+    }
+
+    int run() {
+        System.out.println("Load test: " + settings);
+
+        seed();
+        Stats stats = drive();
+
+        double errorRate = stats.errorRate();
+        System.out.printf("Error rate: %.4f (max %.4f)%n", errorRate, settings.maxErrorRate);
+        return (errorRate > settings.maxErrorRate) ? 1 : 0;
+    }
+
+    private void seed() {
+        Stats stats = new Stats();
+        long start = System.nanoTime();
+
+        Flux.range(settings.firstProductId, settings.products)
+                .flatMap(productId -> timed(stats, "seed", System.nanoTime(), createProduct(productId)), settings.seedConcurrency)
+                .blockLast();
+        stats.print(System.out, Duration.ofNanos(System.nanoTime() - start));
+
+        // The composite only publishes the events, wait until the core services have stored the last product
+        int lastProductId = settings.firstProductId + settings.products - 1;
+        boolean seeded = Flux.interval(Duration.ZERO, Duration.ofMillis(500))
+                .concatMap(i -> isSeeded(lastProductId))
+                .filter(done -> done)
+                .next()
+                .timeout(settings.seedTimeout, Mono.just(false))
+                .blockOptional()
+                .orElse(false);
+        if (!seeded) System.out.println("WARNING: product " + lastProductId + " is not complete after " + settings.seedTimeout + ", starts anyway");
+    }
+
+    private Mono<Boolean> isSeeded(int productId) {
+        return client.get().uri("/product-composite/{productId}", productId)
+                .retrieve()
+                .bodyToMono(ProductAggregate.class)
+                .map(aggregate -> aggregate.getRecommendations().size() == settings.recommendations
+                        && aggregate.getReviews().size() == settings.reviews)
+                .onErrorReturn(false);
+    }
+
+    private Stats drive() {
+        Stats stats = new Stats();
+        long ticks = Math.max(settings.duration.toMillis() / TICK_MILLIS, 1);
+        double requestsPerTick = settings.rps * TICK_MILLIS / 1000.0;
+        long start = System.nanoTime();
+
+        Flux.interval(Duration.ofMillis(TICK_MILLIS))
+                .take(ticks)
+                // Requests over max in flight wait here, their latency includes the wait
+                .onBackpressureBuffer()
+                .flatMapIterable(tick -> {
+                    long intendedStart = start + TimeUnit.MILLISECONDS.toNanos((tick + 1) * TICK_MILLIS);
+                    int requests = (int) (Math.floor((tick + 1) * requestsPerTick) - Math.floor(tick * requestsPerTick));
+                    List<Long> starts = new ArrayList<>(requests);
+                    for (int i = 0; i < requests; i++) starts.add(intendedStart);
+                    return starts;
+                })
+                .flatMap(intendedStart -> request(stats, intendedStart), settings.maxInFlight)
+                .blockLast();
+
+        stats.print(System.out, Duration.ofNanos(System.nanoTime() - start));
+        return stats;
+    }
+
+    private Mono<Void> request(Stats stats, long intendedStart) {
+        int draw = ThreadLocalRandom.current().nextInt(100);
+
+        if (draw >= settings.readPercent + settings.writePercent) {
+            Integer productId = writtenProductIds.poll();
+            // Only products written during the run are deleted, the seeded ones stay readable. Without one the delete
+            // is skipped, not replaced by a read, so the mix of the sent requests is not skewed towards reads
+            if (productId == null) {
+                stats.skipped("delete");
+                return Mono.empty();
+            }
+            return timed(stats, "delete", intendedStart, deleteProduct(productId));
+        } else if (draw >= settings.readPercent) {
+            int productId = nextProductId.getAndIncrement();
+            return timed(stats, "write", intendedStart, createProduct(productId)
+                    .doOnSuccess(response -> writtenProductIds.add(productId)));
+        }
+
+        int productId = settings.firstProductId + ThreadLocalRandom.current().nextInt(settings.products);
+        return timed(stats, "read", intendedStart, readProduct(productId));
+    }
+
+    private Mono<Void> timed(Stats stats, String operation, long intendedStart, Mono<?> call) {
+        return call
+                .doOnSuccess(response -> stats.record(operation, System.nanoTime() - intendedStart, true))
+                .doOnError(ex -> stats.record(operation, System.nanoTime() - intendedStart, false))
+                .onErrorResume(ex -> Mono.empty())
+                .then();
+    }
+
+    private Mono<?> createProduct(int productId) {
+        return client.post().uri("/product-composite")
+                .bodyValue(productAggregate(productId))
+                .retrieve()
+                .toBodilessEntity();
+    }
+
+    private Mono<?> readProduct(int productId) {
+        return client.get().uri("/product-composite/{productId}", productId)
+                .retrieve()
+                .bodyToMono(String.class);
+    }
+
+    private Mono<?> deleteProduct(int productId) {
+        return client.delete().uri("/product-composite/{productId}", productId)
+                .retrieve()
+                .toBodilessEntity();
+    }
+
+    private ProductAggregate productAggregate(int productId) {
+        List<RecommendationSummary> recommendations = new ArrayList<>();
+        for (int i = 1; i <= settings.recommendations; i++) {
+            recommendations.add(new RecommendationSummary(i, "author " + i, i % 5, "content " + i));
+        }
+        List<ReviewSummary> reviews = new ArrayList<>();
+        for (int i = 1; i <= settings.reviews; i++) {
+            reviews.add(new ReviewSummary(i, "author " + i, "subject " + i, "content " + i));
+        }
+        return new ProductAggregate(productId, "product " + productId, productId % 100, recommendations, reviews, null);
+    }
+}
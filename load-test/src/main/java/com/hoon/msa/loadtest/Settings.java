@@ -0,0 +1,92 @@
+package com.hoon.msa.loadtest;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings of a load test run, given as --name=value arguments.
+ */
+class Settings {
+
+    final String host;
+    final int port;
+
+    final int products;
+    final int firstProductId;
+    final int recommendations;
+    final int reviews;
+    final int seedConcurrency;
+    final Duration seedTimeout;
+
+    final int rps;
+    final Duration duration;
+    final int readPercent;
+    final int writePercent;
+    final int deletePercent;
+    final int maxInFlight;
+    final double maxErrorRate;
+
+    private Settings(Map<String, String> args) {
+        host = args.getOrDefault("host", "localhost");
+        port = intArg(args, "port", 7700);
+
+        products = intArg(args, "products", 100);
+        // Far above the product ids used by the tests and test-em-all.bash
+        firstProductId = intArg(args, "first-product-id", 100000);
+        recommendations = intArg(args, "recommendations", 3);
+        reviews = intArg(args, "reviews", 3);
+        seedConcurrency = intArg(args, "seed-concurrency", 16);
+        seedTimeout = durationArg(args, "seed-timeout", Duration.ofSeconds(60));
+
+        rps = intArg(args, "rps", 100);
+        duration = durationArg(args, "duration", Duration.ofSeconds(60));
+        maxInFlight = intArg(args, "max-in-flight", 256);
+        maxErrorRate = Double.parseDouble(args.getOrDefault("max-error-rate", "0.01"));
+
+        // read,write,delete in percent
+        String[] mix = args.getOrDefault("mix", "80,15,5").split(",");
+        if (mix.length != 3) throw new IllegalArgumentException("Expected --mix=read,write,delete, got: " + String.join(",", mix));
+        readPercent = Integer.parseInt(mix[0].trim());
+        writePercent = Integer.parseInt(mix[1].trim());
+        deletePercent = Integer.parseInt(mix[2].trim());
+        if (readPercent + writePercent + deletePercent != 100) throw new IllegalArgumentException("The mix must add up to 100, got: " + String.join(",", mix));
+
+        if (products < 1) throw new IllegalArgumentException("products must be at least 1, was: " + products);
+        if (rps < 1) throw new IllegalArgumentException("rps must be at least 1, was: " + rps);
+    }
+
+    static Settings parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            int separator = arg.indexOf('=');
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return new Settings(values);
+    }
+
+    private static int intArg(Map<String, String> args, String name, int defaultValue) {
+        String value = args.get(name);
+        return (value == null) ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Accepts 500ms, 30s, 2m or an ISO-8601 duration.
+     */
+    private static Duration durationArg(Map<String, String> args, String name, Duration defaultValue) {
+        String value = args.get(name);
+        if (value == null) return defaultValue;
+        if (value.endsWith("ms")) return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        if (value.endsWith("s")) return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        if (value.endsWith("m")) return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        return Duration.parse(value);
+    }
+
+    @Override
+    public String toString() {
+        return "http://" + host + ":" + port + ", " + products + " products with " + recommendations + " recommendations and "
+                + reviews + " reviews, " + rps + " rps for " + duration + ", mix read/write/delete " + readPercent + "/"
+                + writePercent + "/" + deletePercent + ", max in flight " + maxInFlight;
+    }
+}
@@ -0,0 +1,89 @@
+package com.hoon.msa.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and errors per operation. Latencies are recorded in microseconds, up to one minute.
+ * Skipped requests are only counted, they are not part of the count, the rate or the errors.
+ */
+class Stats {
+
+    private static class OperationStats {
+        private final Histogram latencies = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+        private final LongAdder errors = new LongAdder();
+    }
+
+    private final Map<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> skipped = new ConcurrentHashMap<>();
+
+    void record(String operation, long elapsedNanos, boolean success) {
+        OperationStats stats = operations.computeIfAbsent(operation, key -> new OperationStats());
+        stats.latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(elapsedNanos), stats.latencies.getHighestTrackableValue()));
+        if (!success) stats.errors.increment();
+    }
+
+    void skipped(String operation) {
+        skipped.computeIfAbsent(operation, key -> new LongAdder()).increment();
+    }
+
+    long skipped(String operation) {
+        LongAdder count = skipped.get(operation);
+        return (count == null) ? 0 : count.sum();
+    }
+
+    long count() {
+        return operations.values().stream().mapToLong(stats -> stats.latencies.getTotalCount()).sum();
+    }
+
+    long errors() {
+        return operations.values().stream().mapToLong(stats -> stats.errors.sum()).sum();
+    }
+
+    double errorRate() {
+        long count = count();
+        return (count == 0) ? 0 : (double) errors() / count;
+    }
+
+    void print(PrintStream out, Duration elapsed) {
+        double seconds = elapsed.toNanos() / 1e9;
+        out.printf("%-10s %9s %8s %9s %9s %9s %9s %9s %9s%n", "operation", "count", "errors", "rps", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+
+        Histogram total = new Histogram(TimeUnit.MINUTES.toMicros(1), 3);
+        for (Map.Entry<String, OperationStats> entry : new TreeMap<>(operations).entrySet()) {
+            Histogram latencies = entry.getValue().latencies.copy();
+            total.add(latencies);
+            printRow(out, entry.getKey(), latencies, entry.getValue().errors.sum(), seconds);
+        }
+        printRow(out, "total", total, errors(), seconds);
+
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(skipped).entrySet()) {
+            out.printf("Skipped %s: %d%n", entry.getKey(), entry.getValue().sum());
+        }
+    }
+
+    private static void printRow(PrintStream out, String operation, Histogram latencies, long errors, double seconds) {
+        out.printf("%-10s %9d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                operation,
+                latencies.getTotalCount(),
+                errors,
+                latencies.getTotalCount() / seconds,
+                millis(latencies.getValueAtPercentile(50)),
+                millis(latencies.getValueAtPercentile(90)),
+                millis(latencies.getValueAtPercentile(99)),
+                millis(latencies.getValueAtPercentile(99.9)),
+                millis(latencies.getMaxValue()));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,71 @@
+package com.hoon.msa.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SettingsTests {
+
+    @Test
+    public void defaults() {
+
+        Settings settings = Settings.parse(new String[0]);
+
+        assertEquals("localhost", settings.host);
+        assertEquals(7700, settings.port);
+        assertEquals(100, settings.products);
+        assertEquals(100000, settings.firstProductId);
+        assertEquals(Duration.ofSeconds(60), settings.duration);
+        assertEquals(80, settings.readPercent);
+        assertEquals(15, settings.writePercent);
+        assertEquals(5, settings.deletePercent);
+        assertEquals(0.01, settings.maxErrorRate);
+    }
+
+    @Test
+    public void arguments() {
+
+        Settings settings = Settings.parse(new String[] {
+                "--host=composite", "--port=8080", "--products=1000", "--rps=500", "--mix=70, 20, 10", "--max-error-rate=0.5"});
+
+        assertEquals("composite", settings.host);
+        assertEquals(8080, settings.port);
+        assertEquals(1000, settings.products);
+        assertEquals(500, settings.rps);
+        assertEquals(70, settings.readPercent);
+        assertEquals(20, settings.writePercent);
+        assertEquals(10, settings.deletePercent);
+        assertEquals(0.5, settings.maxErrorRate);
+    }
+
+    @Test
+    public void durations() {
+
+        assertEquals(Duration.ofMillis(500), Settings.parse(new String[] {"--duration=500ms"}).duration);
+        assertEquals(Duration.ofSeconds(30), Settings.parse(new String[] {"--duration=30s"}).duration);
+        assertEquals(Duration.ofMinutes(2), Settings.parse(new String[] {"--duration=2m"}).duration);
+        assertEquals(Duration.ofHours(1), Settings.parse(new String[] {"--duration=PT1H"}).duration);
+        assertEquals(Duration.ofSeconds(5), Settings.parse(new String[] {"--seed-timeout=5s"}).seedTimeout);
+    }
+
+    @Test
+    public void valueMayContainEquals() {
+
+        assertEquals("a=b", Settings.parse(new String[] {"--host=a=b"}).host);
+    }
+
+    @Test
+    public void invalidArguments() {
+
+        assertThrows(IllegalArgumentException.class, () -> Settings.parse(new String[] {"port=8080"}));
+        assertThrows(IllegalArgumentException.class, () -> Settings.parse(new String[] {"--port"}));
+        assertThrows(NumberFormatException.class, () -> Settings.parse(new String[] {"--port=http"}));
+        assertThrows(IllegalArgumentException.class, () -> Settings.parse(new String[] {"--mix=80,20"}));
+        assertThrows(IllegalArgumentException.class, () -> Settings.parse(new String[] {"--mix=80,20,10"}));
+        assertThrows(IllegalArgumentException.class, () -> Settings.parse(new String[] {"--products=0"}));
+        assertThrows(IllegalArgumentException.class, () -> Settings.parse(new String[] {"--rps=0"}));
+    }
+}
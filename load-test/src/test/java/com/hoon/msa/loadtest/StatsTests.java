@@ -0,0 +1,24 @@
+package com.hoon.msa.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StatsTests {
+
+    @Test
+    public void skippedRequestsAreNotCounted() {
+
+        Stats stats = new Stats();
+        stats.record("read", 1_000_000, true);
+        stats.record("delete", 1_000_000, false);
+        stats.skipped("delete");
+        stats.skipped("delete");
+
+        assertEquals(2, stats.count());
+        assertEquals(1, stats.errors());
+        assertEquals(0.5, stats.errorRate());
+        assertEquals(2, stats.skipped("delete"));
+        assertEquals(0, stats.skipped("read"));
+    }
+}
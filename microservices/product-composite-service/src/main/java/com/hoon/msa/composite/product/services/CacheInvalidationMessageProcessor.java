@@ -0,0 +1,92 @@
+package com.hoon.msa.composite.product.services;
+
+import com.hoon.api.event.Event;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.stream.annotation.EnableBinding;
+import org.springframework.cloud.stream.annotation.Input;
+import org.springframework.cloud.stream.annotation.StreamListener;
+import org.springframework.messaging.SubscribableChannel;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+/**
+ * Evicts the cached aggregate of a product when any instance publishes an event for it. The bindings have no consumer
+ * group, every instance receives every event and keeps its own cache consistent.
+ *
+ * The core services apply the same events concurrently, an aggregate read between the eviction and the write of the
+ * core service would be cached stale again. The aggregate is therefore evicted a second time after
+ * app.product-composite.cache.invalidation-delay, which should exceed the time the core services take to apply an
+ * event. An event that takes longer leaves the stale aggregate cached until it expires, after expire-after-write.
+ *
+ * Disabled with app.product-composite.cache.invalidate-on-events: false.
+ */
+@Slf4j
+@ConditionalOnProperty(name = "app.product-composite.cache.invalidate-on-events", havingValue = "true", matchIfMissing = true)
+@EnableBinding(CacheInvalidationMessageProcessor.InvalidationSinks.class)
+public class CacheInvalidationMessageProcessor {
+
+    private final ProductAggregateCache cache;
+    private final Duration invalidationDelay;
+    private final Scheduler scheduler;
+
+    public interface InvalidationSinks {
+
+        String INVALIDATE_PRODUCTS = "invalidate-products";
+        String INVALIDATE_RECOMMENDATIONS = "invalidate-recommendations";
+        String INVALIDATE_REVIEWS = "invalidate-reviews";
+
+        @Input(INVALIDATE_PRODUCTS)
+        SubscribableChannel invalidateProducts();
+
+        @Input(INVALIDATE_RECOMMENDATIONS)
+        SubscribableChannel invalidateRecommendations();
+
+        @Input(INVALIDATE_REVIEWS)
+        SubscribableChannel invalidateReviews();
+    }
+
+    @Autowired
+    public CacheInvalidationMessageProcessor(ProductAggregateCache cache,
+                                             @Value("${app.product-composite.cache.invalidation-delay:2s}") Duration invalidationDelay) {
+        this(cache, invalidationDelay, Schedulers.parallel());
+    }
+
+    /**
+     * @param scheduler runs the delayed invalidations
+     */
+    public CacheInvalidationMessageProcessor(ProductAggregateCache cache, Duration invalidationDelay, Scheduler scheduler) {
+        this.cache = cache;
+        this.invalidationDelay = invalidationDelay;
+        this.scheduler = scheduler;
+    }
+
+    @StreamListener(target = InvalidationSinks.INVALIDATE_PRODUCTS)
+    public void processProduct(Event<Integer, Object> event) {
+        invalidate(event);
+    }
+
+    @StreamListener(target = InvalidationSinks.INVALIDATE_RECOMMENDATIONS)
+    public void processRecommendation(Event<Integer, Object> event) {
+        invalidate(event);
+    }
+
+    @StreamListener(target = InvalidationSinks.INVALIDATE_REVIEWS)
+    public void processReview(Event<Integer, Object> event) {
+        invalidate(event);
+    }
+
+    private void invalidate(Event<Integer, Object> event) {
+        Integer productId = event.getKey();
+        if (productId == null) return;
+
+        log.debug("Evicts the aggregate of productId: {} on a {} event", productId, event.getEventType());
+        cache.invalidate(productId);
+        Mono.delay(invalidationDelay, scheduler).subscribe(tick -> cache.invalidate(productId));
+    }
+}
@@ -0,0 +1,106 @@
+package com.hoon.msa.composite.product.services;
+
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Builds one WebClient per core service, each with its own Reactor Netty connection pool,
+ * so a slow service can not use up the connections of the others.
+ *
+ * The pool keeps its connections alive between requests and evicts them in the background once they have been
+ * idle for maxIdleTime or open for maxLifeTime. Requests wait in the pending-acquire queue for a free connection
+ * for at most pendingAcquireTimeout; when the queue is full they fail at once.
+ * Responses are requested gzip compressed; with http2 enabled, HTTP/2 is used over cleartext (h2c) if the core
+ * service supports it.
+ *
+ * The pools are exposed as the reactor.netty.connection.provider.* metrics, tagged with name (the service).
+ */
+@Slf4j
+@Component
+public class DownstreamHttpClients implements DisposableBean {
+
+    private final WebClient.Builder webClientBuilder;
+
+    private final int maxConnections;
+    private final int pendingAcquireMaxCount;
+    private final Duration pendingAcquireTimeout;
+    private final Duration maxIdleTime;
+    private final Duration maxLifeTime;
+    private final Duration evictInterval;
+    private final Duration connectTimeout;
+    private final boolean http2;
+    private final boolean compress;
+
+    private final List<ConnectionProvider> providers = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public DownstreamHttpClients(WebClient.Builder webClientBuilder,
+                                 @Value("${app.product-composite.http-client.max-connections:500}") int maxConnections,
+                                 @Value("${app.product-composite.http-client.pending-acquire-max-count:1000}") int pendingAcquireMaxCount,
+                                 @Value("${app.product-composite.http-client.pending-acquire-timeout:1s}") Duration pendingAcquireTimeout,
+                                 @Value("${app.product-composite.http-client.max-idle-time:30s}") Duration maxIdleTime,
+                                 @Value("${app.product-composite.http-client.max-life-time:5m}") Duration maxLifeTime,
+                                 @Value("${app.product-composite.http-client.evict-interval:30s}") Duration evictInterval,
+                                 @Value("${app.product-composite.http-client.connect-timeout:1s}") Duration connectTimeout,
+                                 @Value("${app.product-composite.http-client.http2:false}") boolean http2,
+                                 @Value("${app.product-composite.http-client.compress:true}") boolean compress) {
+        this.webClientBuilder = webClientBuilder;
+        this.maxConnections = maxConnections;
+        this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+        this.pendingAcquireTimeout = pendingAcquireTimeout;
+        this.maxIdleTime = maxIdleTime;
+        this.maxLifeTime = maxLifeTime;
+        this.evictInterval = evictInterval;
+        this.connectTimeout = connectTimeout;
+        this.http2 = http2;
+        this.compress = compress;
+    }
+
+    /**
+     * @param service name of the core service, used as name of its connection pool
+     * @return a new WebClient with a connection pool of its own
+     */
+    public WebClient webClient(String service) {
+        ConnectionProvider provider = ConnectionProvider.builder(service)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictInterval)
+                .metrics(true)
+                .build();
+        providers.add(provider);
+
+        HttpClient httpClient = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .compress(compress)
+                .protocol(http2 ? new HttpProtocol[] {HttpProtocol.H2C, HttpProtocol.HTTP11} : new HttpProtocol[] {HttpProtocol.HTTP11});
+
+        log.info("Connection pool for the {} service: maxConnections: {}, pendingAcquireMaxCount: {}, http2: {}, compress: {}",
+                service, maxConnections, pendingAcquireMaxCount, http2, compress);
+
+        // Clone the builder, it is shared with the rest of the application
+        return webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+
+    @Override
+    public void destroy() {
+        providers.forEach(ConnectionProvider::dispose);
+    }
+}
@@ -0,0 +1,148 @@
+package com.hoon.msa.composite.product.services;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.actuate.health.Health;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Deadline, optional hedging, bulkhead and circuit breaker of the calls to one core service.
+ *
+ * Every call has to complete within timeout, else it fails with a TimeoutException.
+ * With hedging, a second identical request is sent if the first one has not answered within the hedge percentile
+ * of the recent latencies of the service (but no sooner than minHedgeDelay), and the first answer of the two wins.
+ * Only hedge idempotent reads.
+ *
+ * The bulkhead limits the concurrent requests to the service, requests over the limit fail at once with a
+ * BulkheadFullException. The circuit breaker opens when too many calls fail or time out and then rejects calls with
+ * a CallNotPermittedException until its wait in the open state is over, then lets a few probe calls through (half open)
+ * to decide whether to close again. NotFoundException and InvalidInputException are answers, not failures.
+ * The bulkhead sits inside the circuit breaker, so its circuit breaker config has to ignore BulkheadFullException,
+ * else a burst of rejected calls opens the circuit of a healthy service.
+ *
+ * Latencies are exposed as composite.downstream.latency, hedged requests as composite.downstream.hedges,
+ * both tagged with service. The circuit breakers and bulkheads of all services come from shared registries, which
+ * expose the resilience4j.circuitbreaker.* and resilience4j.bulkhead.* metrics tagged with name.
+ */
+public class DownstreamPolicy {
+
+    private final String service;
+    private final Duration timeout;
+    private final boolean hedgeEnabled;
+    private final double hedgePercentile;
+    private final Duration minHedgeDelay;
+
+    private final Timer latency;
+    private final Counter hedges;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+
+    public DownstreamPolicy(String service, Duration timeout, boolean hedgeEnabled, double hedgePercentile, Duration minHedgeDelay,
+                            CircuitBreakerRegistry circuitBreakerRegistry, BulkheadRegistry bulkheadRegistry, MeterRegistry meterRegistry) {
+        this.service = service;
+        this.timeout = timeout;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgePercentile = hedgePercentile;
+        this.minHedgeDelay = minHedgeDelay;
+
+        this.latency = Timer.builder("composite.downstream.latency")
+                .description("Latency of successful calls to a core service")
+                .tag("service", service)
+                .publishPercentiles(hedgePercentile)
+                .register(meterRegistry);
+        this.hedges = Counter.builder("composite.downstream.hedges")
+                .description("Hedged second requests sent to a core service")
+                .tag("service", service)
+                .register(meterRegistry);
+
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(service);
+        this.bulkhead = bulkheadRegistry.bulkhead(service);
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public <T> Mono<T> apply(Supplier<Mono<T>> call) {
+        // Each request, also a hedged one, takes a place in the bulkhead
+        Mono<T> request = Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.get().doOnSuccess(result -> latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        }).transformDeferred(BulkheadOperator.of(bulkhead));
+
+        // The circuit breaker records one outcome per call, timeouts included
+        return (hedgeEnabled ? hedged(request) : request)
+                .timeout(timeout)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker));
+    }
+
+    /**
+     * Applies the policy to a streamed response, the elements are passed on as they arrive.
+     * The timeout applies to the first element and then to the gap between two elements, so a long stream is not cut
+     * off as long as it keeps flowing. Streams are not hedged, a hedge would have to replay what was already emitted.
+     */
+    public <T> Flux<T> applyMany(Supplier<Flux<T>> call) {
+        Flux<T> request = Flux.defer(() -> {
+            long start = System.nanoTime();
+            return call.get().doOnComplete(() -> latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        }).transformDeferred(BulkheadOperator.of(bulkhead));
+
+        return request
+                .timeout(timeout)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker));
+    }
+
+    /**
+     * Adds the state of the circuit breaker and the bulkhead to the health of the service.
+     * While the circuit breaker is open the service is reported as down.
+     */
+    public Health health(Health.Builder builder) {
+        CircuitBreaker.State state = circuitBreaker.getState();
+        if (state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN) builder.down();
+
+        return builder
+                .withDetail("circuitBreakerState", state.name())
+                .withDetail("failureRate", circuitBreaker.getMetrics().getFailureRate())
+                .withDetail("bulkheadAvailableConcurrentCalls", bulkhead.getMetrics().getAvailableConcurrentCalls())
+                .build();
+    }
+
+    private <T> Mono<T> hedged(Mono<T> request) {
+        return Mono.defer(() -> {
+            Mono<T> hedge = Mono.delay(hedgeDelay()).then(Mono.defer(() -> {
+                hedges.increment();
+                return request;
+            }));
+
+            // The first signal wins, also an error, so a failing first request is not masked by its hedge
+            return Mono.firstWithSignal(request, hedge);
+        });
+    }
+
+    /**
+     * @return the hedge percentile of the latencies seen so far, at least minHedgeDelay and less than the timeout
+     */
+    Duration hedgeDelay() {
+        Duration delay = minHedgeDelay;
+        for (ValueAtPercentile value : latency.takeSnapshot().percentileValues()) {
+            if (value.percentile() == hedgePercentile) {
+                Duration observed = Duration.ofNanos((long) value.value(TimeUnit.NANOSECONDS));
+                if (observed.compareTo(delay) > 0) delay = observed;
+            }
+        }
+        return (delay.compareTo(timeout) < 0) ? delay : timeout;
+    }
+}
@@ -0,0 +1,60 @@
+package com.hoon.msa.composite.product.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hoon.api.composite.product.ProductAggregate;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Read-through cache of assembled product aggregates, keyed by productId.
+ *
+ * Entries are evicted by size and by age, and are invalidated when this instance publishes a CREATE or DELETE event
+ * for the product and when any instance's event for it is consumed, see CacheInvalidationMessageProcessor.
+ * Hit/miss/eviction counters are exposed on $HOST:$PORT/actuator/metrics/cache.* with tag cache=productAggregates
+ */
+@Slf4j
+@Component
+public class ProductAggregateCache {
+    static final String CACHE_NAME = "productAggregates";
+
+    private final Cache<Integer, ProductAggregate> cache;
+
+    @Autowired
+    public ProductAggregateCache(MeterRegistry meterRegistry,
+                                 @Value("${app.product-composite.cache.maximum-size:10000}") long maximumSize,
+                                 @Value("${app.product-composite.cache.expire-after-write:30s}") Duration expireAfterWrite) {
+
+        log.info("Creates a product aggregate cache with maximumSize = {}, expireAfterWrite = {}", maximumSize, expireAfterWrite);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * @param productId
+     * @return the cached aggregate, if present, else null
+     */
+    public ProductAggregate get(int productId) {
+        return cache.getIfPresent(productId);
+    }
+
+    public void put(ProductAggregate aggregate) {
+        cache.put(aggregate.getProductId(), aggregate);
+    }
+
+    public void invalidate(int productId) {
+        log.debug("invalidate: evicts the cached aggregate for productId: {}", productId);
+        cache.invalidate(productId);
+    }
+}
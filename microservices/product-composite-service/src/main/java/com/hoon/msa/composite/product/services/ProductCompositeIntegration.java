@@ -8,16 +8,29 @@ import com.hoon.api.core.recommendation.RecommendationService;
 import com.hoon.api.core.review.Review;
 import com.hoon.api.core.review.ReviewService;
 import com.hoon.api.event.Event;
+import com.hoon.util.exceptions.EventProcessingException;
 import com.hoon.util.exceptions.InvalidInputException;
 import com.hoon.util.exceptions.NotFoundException;
 import com.hoon.util.http.HttpErrorInfo;
+import com.hoon.util.reactor.StageMetrics;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.Output;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
@@ -29,27 +42,42 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static com.hoon.api.event.Event.Type.CREATE;
 import static com.hoon.api.event.Event.Type.DELETE;
 import static org.springframework.http.HttpMethod.GET;
-import static reactor.core.publisher.Flux.empty;
 
 @Slf4j
 @EnableBinding(ProductCompositeIntegration.MessageSources.class)
 @Component
 public class ProductCompositeIntegration  implements ProductService, RecommendationService, ReviewService {
 //    private final RestTemplate restTemplate;
-    private final WebClient webClient;
+    private final WebClient productClient;
+    private final WebClient recommendationClient;
+    private final WebClient reviewClient;
     private final ObjectMapper mapper;
+    private final StageMetrics stageMetrics;
+    private final RevalidationCache revalidationCache;
 
     private final String productServiceUrl;
     private final String recommendationServiceUrl;
     private final String reviewServiceUrl;
 
     private MessageSources messageSources;
+    private final boolean publisherConfirms;
+    private final Duration publisherConfirmTimeout;
+
+    private final DownstreamPolicy productPolicy;
+    private final DownstreamPolicy recommendationPolicy;
+    private final DownstreamPolicy reviewPolicy;
+
+    private final RequestCoalescer<Integer, Product> productRequests = new RequestCoalescer<>();
+    private final RequestCoalescer<String, List<Recommendation>> recommendationRequests = new RequestCoalescer<>();
+    private final RequestCoalescer<String, List<Review>> reviewRequests = new RequestCoalescer<>();
 
     public interface MessageSources {
 
@@ -68,20 +96,42 @@ public class ProductCompositeIntegration  implements ProductService, Recommendat
     }
 
     @Autowired
-    public ProductCompositeIntegration(WebClient.Builder webClient,
+    public ProductCompositeIntegration(DownstreamHttpClients httpClients,
                                        ObjectMapper mapper,
+                                       StageMetrics stageMetrics,
+                                       RevalidationCache revalidationCache,
                                        MessageSources messageSources,
                                        @Value("${app.product-service.host}") String productServiceHost,
                                        @Value("${app.product-service.port}") int productServicePort,
                                        @Value("${app.recommendation-service.host}") String recommendationServiceHost,
                                        @Value("${app.recommendation-service.port}") int recommendationServicePort,
                                        @Value("${app.review-service.host}") String reviewServiceHost,
-                                       @Value("${app.review-service.port}") int reviewServicePort
+                                       @Value("${app.review-service.port}") int reviewServicePort,
+                                       @Value("${app.product-service.timeout:2s}") Duration productServiceTimeout,
+                                       @Value("${app.recommendation-service.timeout:1s}") Duration recommendationServiceTimeout,
+                                       @Value("${app.review-service.timeout:1s}") Duration reviewServiceTimeout,
+                                       @Value("${app.product-composite.hedge.enabled:false}") boolean hedgeEnabled,
+                                       @Value("${app.product-composite.hedge.percentile:0.95}") double hedgePercentile,
+                                       @Value("${app.product-composite.hedge.min-delay:50ms}") Duration hedgeMinDelay,
+                                       @Value("${app.product-composite.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold,
+                                       @Value("${app.product-composite.circuit-breaker.sliding-window-size:20}") int slidingWindowSize,
+                                       @Value("${app.product-composite.circuit-breaker.wait-in-open-state:10s}") Duration waitInOpenState,
+                                       @Value("${app.product-composite.circuit-breaker.permitted-calls-in-half-open-state:3}") int permittedCallsInHalfOpenState,
+                                       @Value("${app.product-composite.bulkhead.max-concurrent-calls:100}") int maxConcurrentCalls,
+                                       @Value("${app.product-composite.publisher-confirms.enabled:false}") boolean publisherConfirms,
+                                       @Value("${app.product-composite.publisher-confirms.timeout:5s}") Duration publisherConfirmTimeout,
+                                       MeterRegistry meterRegistry
                                        ) {
 //        this.restTemplate = restTemplate;
-        this.webClient = webClient.build();
+        this.productClient = httpClients.webClient("product");
+        this.recommendationClient = httpClients.webClient("recommendation");
+        this.reviewClient = httpClients.webClient("review");
         this.mapper = mapper;
+        this.stageMetrics = stageMetrics;
+        this.revalidationCache = revalidationCache;
         this.messageSources = messageSources;
+        this.publisherConfirms = publisherConfirms;
+        this.publisherConfirmTimeout = publisherConfirmTimeout;
 
 //        this.productServiceUrl        = "http://" + productServiceHost + ":" + productServicePort + "/product/";
 //        this.recommendationServiceUrl = "http://" + recommendationServiceHost + ":" + recommendationServicePort + "/recommendation?productId=";
@@ -90,10 +140,35 @@ public class ProductCompositeIntegration  implements ProductService, Recommendat
         productServiceUrl        = "http://" + productServiceHost + ":" + productServicePort;
         recommendationServiceUrl = "http://" + recommendationServiceHost + ":" + recommendationServicePort;
         reviewServiceUrl         = "http://" + reviewServiceHost + ":" + reviewServicePort;
+
+        CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(slidingWindowSize)
+                .waitDurationInOpenState(waitInOpenState)
+                .permittedNumberOfCallsInHalfOpenState(permittedCallsInHalfOpenState)
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                // A rejection by the bulkhead inside the circuit breaker says nothing about the health of the service
+                .ignoreExceptions(NotFoundException.class, InvalidInputException.class, BulkheadFullException.class)
+                .build();
+        BulkheadConfig bulkheadConfig = BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxWaitDuration(Duration.ZERO)
+                .build();
+
+        // One registry of each for all services, their metrics are bound once
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(circuitBreakerConfig);
+        BulkheadRegistry bulkheadRegistry = BulkheadRegistry.of(bulkheadConfig);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+
+        productPolicy        = new DownstreamPolicy("product", productServiceTimeout, hedgeEnabled, hedgePercentile, hedgeMinDelay, circuitBreakerRegistry, bulkheadRegistry, meterRegistry);
+        recommendationPolicy = new DownstreamPolicy("recommendation", recommendationServiceTimeout, hedgeEnabled, hedgePercentile, hedgeMinDelay, circuitBreakerRegistry, bulkheadRegistry, meterRegistry);
+        reviewPolicy         = new DownstreamPolicy("review", reviewServiceTimeout, hedgeEnabled, hedgePercentile, hedgeMinDelay, circuitBreakerRegistry, bulkheadRegistry, meterRegistry);
     }
 
     @Override
-    public Product createProduct(Product body) {
+    public Mono<Product> createProduct(Product body) {
 
 //        try {
 //            String url = productServiceUrl;
@@ -107,15 +182,12 @@ public class ProductCompositeIntegration  implements ProductService, Recommendat
 //        } catch (HttpClientErrorException ex) {
 //            throw handleHttpClientException(ex);
 //        }
-        messageSources.outputProducts()
-                .send(MessageBuilder.withPayload(
-                        new Event(CREATE, body.getProductId(), body)
-                ).build());
-        return body;
+        return publish(messageSources.outputProducts(), new Event(CREATE, body.getProductId(), body))
+                .thenReturn(body);
     }
 
     @Override
-    public void deleteProduct(int productId) {
+    public Mono<Void> deleteProduct(int productId) {
 //        try {
 //            String url = productServiceUrl + "/" + productId;
 //            log.debug("Will call the deleteProduct API on URL: {}", url);
@@ -125,10 +197,7 @@ public class ProductCompositeIntegration  implements ProductService, Recommendat
 //        } catch (HttpClientErrorException ex) {
 //            throw handleHttpClientException(ex);
 //        }
-        messageSources.outputProducts()
-                .send(MessageBuilder.withPayload(
-                        new Event(DELETE, productId, null)
-                ).build());
+        return publish(messageSources.outputProducts(), new Event(DELETE, productId, null));
     }
 
     @Override
@@ -152,18 +221,37 @@ public class ProductCompositeIntegration  implements ProductService, Recommendat
 //                    throw ex;
 //            }
 //        }
-        String url = productServiceUrl + "/product/" + productId;
-        return webClient.get()
-                .uri(url)
+        // URI templates keep the uri tag of the http.client.requests metrics independent of the ids
+        String uri = productServiceUrl + "/product/{productId}";
+
+        // Concurrent lookups of the same product share one downstream call, an unchanged product is revalidated
+        return productRequests.coalesce(productId, () -> productPolicy.apply(() -> revalidationCache.exchange("product/" + productId, ifNoneMatch -> productClient.get()
+                .uri(uri, productId)
+                .headers(ifNoneMatch)
                 .retrieve()
-                .bodyToMono(Product.class)
-                .log()
-                .onErrorMap(WebClientResponseException.class, ex-> handleException(ex));
+                .toEntity(Product.class))
+                .transform(stageMetrics.mono("composite.integration.product"))
+                .onErrorMap(WebClientResponseException.class, ex-> handleException(ex))));
+
+    }
+
+    @Override
+    public Flux<Product> getProducts(List<Integer> productIds) {
+        String uri = productServiceUrl + "/product/batch?productIds={productIds}";
 
+        log.debug("Will call the getProducts API on URL: {}, productIds: {}", uri, productIds);
+
+        // The products are passed on as they arrive, nothing of the batch response is held here
+        return productPolicy.applyMany(() -> productClient.get()
+                .uri(uri, toQueryValue(productIds))
+                .accept(MediaType.APPLICATION_NDJSON, MediaType.APPLICATION_JSON)
+                .retrieve()
+                .bodyToFlux(Product.class)
+                .onErrorMap(WebClientResponseException.class, ex -> handleException(ex)));
     }
 
     @Override
-    public Flux<Recommendation> getRecommendations(int productId) {
+    public Flux<Recommendation> getRecommendations(int productId, int afterRecommendationId, int limit, boolean content) {
 //        try {
 //            String url = recommendationServiceUrl + productId;
 //
@@ -177,16 +265,50 @@ public class ProductCompositeIntegration  implements ProductService, Recommendat
 //            return new ArrayList<>();
 //        }
 
-        String url = recommendationServiceUrl + "/recommendation?productId=" + productId;
+        String uri = recommendationServiceUrl + "/recommendation?productId={productId}&afterRecommendationId={afterRecommendationId}&limit={limit}&content={content}";
 
-        log.debug("Will call the getRecommendations API on URL: {}", url);
+        log.debug("Will call the getRecommendations API on URL: {}, productId: {}, afterRecommendationId: {}, limit: {}, content: {}", uri, productId, afterRecommendationId, limit, content);
+
+        // Errors and timeouts are propagated, the composite service falls back to a partial response
+        if (!revalidationCache.isEnabled()) {
+            // Streamed as NDJSON, the recommendations are passed on as the core service reads them
+            return recommendationPolicy.applyMany(() -> recommendationClient.get()
+                    .uri(uri, productId, afterRecommendationId, limit, content)
+                    .accept(MediaType.APPLICATION_NDJSON)
+                    .retrieve()
+                    .bodyToFlux(Recommendation.class)
+                    .transform(stageMetrics.flux("composite.integration.recommendations")));
+        }
 
-        // Return an empty result if something goes wrong to make it possible for the composite service to return partial responses
-        return webClient.get().uri(url).retrieve().bodyToFlux(Recommendation.class).log().onErrorResume(error -> empty());
+        // A page that can be revalidated is read as JSON, the core services only give JSON responses an ETag
+        String key = "recommendation/" + productId + "/" + afterRecommendationId + "/" + limit + "/" + content;
+        return recommendationRequests.coalesce(key, () -> recommendationPolicy.apply(() -> revalidationCache.exchange(key, ifNoneMatch -> recommendationClient.get()
+                .uri(uri, productId, afterRecommendationId, limit, content)
+                .headers(ifNoneMatch)
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .toEntityList(Recommendation.class))
+                .transform(stageMetrics.mono("composite.integration.recommendations"))))
+                .flatMapIterable(recommendations -> recommendations);
     }
 
     @Override
-    public Recommendation createRecommendation(Recommendation body) {
+    public Flux<Recommendation> getRecommendationsForProducts(List<Integer> productIds) {
+        String uri = recommendationServiceUrl + "/recommendation/batch?productIds={productIds}";
+
+        log.debug("Will call the getRecommendationsForProducts API on URL: {}, productIds: {}", uri, productIds);
+
+        // Errors and timeouts are propagated, the composite service falls back to partial responses.
+        // The recommendations are streamed through grouped by product, see RecommendationService
+        return recommendationPolicy.applyMany(() -> recommendationClient.get()
+                .uri(uri, toQueryValue(productIds))
+                .accept(MediaType.APPLICATION_NDJSON, MediaType.APPLICATION_JSON)
+                .retrieve()
+                .bodyToFlux(Recommendation.class));
+    }
+
+    @Override
+    public Mono<Recommendation> createRecommendation(Recommendation body) {
 //        try {
 //            String url = recommendationServiceUrl;
 //            log.debug("Will post a new recommendation to URL: {}", url);
@@ -199,12 +321,12 @@ public class ProductCompositeIntegration  implements ProductService, Recommendat
 //        } catch (HttpClientErrorException ex) {
 //            throw handleHttpClientException(ex);
 //        }
-        messageSources.outputRecommendations().send(MessageBuilder.withPayload(new Event(CREATE, body.getProductId(), body)).build());
-        return body;
+        return publish(messageSources.outputRecommendations(), new Event(CREATE, body.getProductId(), body))
+                .thenReturn(body);
     }
 
     @Override
-    public void deleteRecommendations(int productId) {
+    public Mono<Void> deleteRecommendations(int productId) {
 //        try {
 //            String url = recommendationServiceUrl + "?productId=" + productId;
 //            log.debug("Will call the deleteRecommendations API on URL: {}", url);
@@ -214,7 +336,29 @@ public class ProductCompositeIntegration  implements ProductService, Recommendat
 //        } catch (HttpClientErrorException ex) {
 //            throw handleHttpClientException(ex);
 //        }
-        messageSources.outputRecommendations().send(MessageBuilder.withPayload(new Event(DELETE, productId, null)).build());
+        return publish(messageSources.outputRecommendations(), new Event(DELETE, productId, null));
+    }
+
+    /**
+     * Sends the event when subscribed to. With publisher confirms the send only hands the message to the broker
+     * connection, the returned Mono completes when the broker confirms it, so many events can be awaited at a time.
+     * Without, it completes when the binder's send returns.
+     */
+    private Mono<Void> publish(MessageChannel channel, Event<?, ?> event) {
+        if (!publisherConfirms) {
+            return Mono.fromRunnable(() -> channel.send(MessageBuilder.withPayload(event).build()));
+        }
+
+        return Mono.defer(() -> {
+            CorrelationData correlation = new CorrelationData();
+            channel.send(MessageBuilder.withPayload(event)
+                    .setHeader(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION, correlation)
+                    .build());
+            return Mono.fromFuture(correlation.getFuture().completable());
+        })
+                .timeout(publisherConfirmTimeout)
+                .flatMap(confirm -> confirm.isAck() ? Mono.<Void>empty() :
+                        Mono.error(new EventProcessingException("Event for key " + event.getKey() + " was not confirmed by the broker: " + confirm.getReason())));
     }
 
     private RuntimeException handleHttpClientException(HttpClientErrorException ex) {
@@ -234,7 +378,7 @@ public class ProductCompositeIntegration  implements ProductService, Recommendat
     }
 
     @Override
-    public Flux<Review> getReviews(int productId) {
+    public Flux<Review> getReviews(int productId, int afterReviewId, int limit, boolean content) {
 //        try {
 //            String url = reviewServiceUrl + productId;
 //
@@ -248,21 +392,54 @@ public class ProductCompositeIntegration  implements ProductService, Recommendat
 //            log.warn("Got an exception while requesting reviews, return zero reviews: {}", ex.getMessage());
 //            return new ArrayList<>();
 //        }
-        String url = reviewServiceUrl + "/review?productId=" + productId;
+        String uri = reviewServiceUrl + "/review?productId={productId}&afterReviewId={afterReviewId}&limit={limit}&content={content}";
+
+        log.debug("Will call the getReviews API on URL: {}, productId: {}, afterReviewId: {}, limit: {}, content: {}", uri, productId, afterReviewId, limit, content);
+
+        // Errors and timeouts are propagated, the composite service falls back to a partial response
+        if (!revalidationCache.isEnabled()) {
+            // Streamed as NDJSON, the reviews are passed on as the core service reads them
+            return reviewPolicy.applyMany(() -> reviewClient.get()
+                    .uri(uri, productId, afterReviewId, limit, content)
+                    .accept(MediaType.APPLICATION_NDJSON)
+                    .retrieve()
+                    .bodyToFlux(Review.class)
+                    .transform(stageMetrics.flux("composite.integration.reviews")));
+        }
 
-        log.debug("Will call the getReviews API on URL: {}", url);
+        // A page that can be revalidated is read as JSON, the core services only give JSON responses an ETag
+        String key = "review/" + productId + "/" + afterReviewId + "/" + limit + "/" + content;
+        return reviewRequests.coalesce(key, () -> reviewPolicy.apply(() -> revalidationCache.exchange(key, ifNoneMatch -> reviewClient.get()
+                .uri(uri, productId, afterReviewId, limit, content)
+                .headers(ifNoneMatch)
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .toEntityList(Review.class))
+                .transform(stageMetrics.mono("composite.integration.reviews"))))
+                .flatMapIterable(reviews -> reviews);
+    }
+
+    @Override
+    public Flux<Review> getReviewsForProducts(List<Integer> productIds) {
+        String uri = reviewServiceUrl + "/review/batch?productIds={productIds}";
 
-        // Return an empty result if something goes wrong to make it possible for the composite service to return partial responses
-        return webClient.get()
-                .uri(url)
+        log.debug("Will call the getReviewsForProducts API on URL: {}, productIds: {}", uri, productIds);
+
+        // Errors and timeouts are propagated, the composite service falls back to partial responses.
+        // The reviews are streamed through grouped by product, see ReviewService
+        return reviewPolicy.applyMany(() -> reviewClient.get()
+                .uri(uri, toQueryValue(productIds))
+                .accept(MediaType.APPLICATION_NDJSON, MediaType.APPLICATION_JSON)
                 .retrieve()
-                .bodyToFlux(Review.class)
-                .log()
-                .onErrorResume(error -> empty());
+                .bodyToFlux(Review.class));
+    }
+
+    private String toQueryValue(List<Integer> productIds) {
+        return productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
     }
 
     @Override
-    public Review createReview(Review body) {
+    public Mono<Review> createReview(Review body) {
 //        try {
 //            String url = reviewServiceUrl;
 //            log.debug("Will post a new review to URL: {}", url);
@@ -276,12 +453,12 @@ public class ProductCompositeIntegration  implements ProductService, Recommendat
 //            throw handleHttpClientException(ex);
 //        }
 
-        messageSources.outputReviews().send(MessageBuilder.withPayload(new Event(CREATE, body.getProductId(), body)).build());
-        return body;
+        return publish(messageSources.outputReviews(), new Event(CREATE, body.getProductId(), body))
+                .thenReturn(body);
     }
 
     @Override
-    public void deleteReviews(int productId) {
+    public Mono<Void> deleteReviews(int productId) {
 //        try {
 //            String url = reviewServiceUrl + "?productId=" + productId;
 //            log.debug("Will call the deleteReviews API on URL: {}", url);
@@ -291,7 +468,7 @@ public class ProductCompositeIntegration  implements ProductService, Recommendat
 //        } catch (HttpClientErrorException ex) {
 //            throw handleHttpClientException(ex);
 //        }
-        messageSources.outputReviews().send(MessageBuilder.withPayload(new Event(DELETE, productId, null)).build());
+        return publish(messageSources.outputReviews(), new Event(DELETE, productId, null));
     }
 
     private String getErrorMessage(HttpClientErrorException ex) {
@@ -335,23 +512,26 @@ public class ProductCompositeIntegration  implements ProductService, Recommendat
     }
 
     public Mono<Health> getProductHealth() {
-        return getHealth(productServiceUrl);
+        return getHealth(productServiceUrl, productClient, productPolicy);
     }
 
     public Mono<Health> getRecommendationHealth() {
-        return getHealth(recommendationServiceUrl);
+        return getHealth(recommendationServiceUrl, recommendationClient, recommendationPolicy);
     }
 
     public Mono<Health> getReviewHealth() {
-        return getHealth(reviewServiceUrl);
+        return getHealth(reviewServiceUrl, reviewClient, reviewPolicy);
     }
 
-    private Mono<Health> getHealth(String url) {
+    /**
+     * The health check itself bypasses the circuit breaker, so it keeps reporting while the circuit is open.
+     */
+    private Mono<Health> getHealth(String url, WebClient client, DownstreamPolicy policy) {
         url += "/actuator/health";
         log.debug("Will call the Health API on URL: {}", url);
-        return webClient.get().uri(url).retrieve().bodyToMono(String.class)
-                .map(s -> new Health.Builder().up().build())
-                .onErrorResume(ex -> Mono.just(new Health.Builder().down(ex).build()))
+        return client.get().uri(url).retrieve().bodyToMono(String.class)
+                .map(s -> policy.health(new Health.Builder().up()))
+                .onErrorResume(ex -> Mono.just(policy.health(new Health.Builder().down(ex))))
                 .log();
     }
 
@@ -4,56 +4,93 @@ import com.hoon.api.composite.product.*;
 import com.hoon.api.core.product.Product;
 import com.hoon.api.core.recommendation.Recommendation;
 import com.hoon.api.core.review.Review;
+import com.hoon.util.exceptions.InvalidInputException;
 import com.hoon.util.exceptions.NotFoundException;
+import com.hoon.util.http.ConditionalGetFilter;
+import com.hoon.util.http.ETag;
 import com.hoon.util.http.ServiceUtil;
+import com.hoon.util.reactor.StageMetrics;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
+import static java.util.Collections.emptyList;
+
 @Slf4j
 @AllArgsConstructor
 @RestController
 public class ProductCompositeServiceImpl implements ProductCompositeService {
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int PUBLISH_CONCURRENCY = 32;
+
+    // The product is always included, include=product asks for the product only
+    private static final String INCLUDE_PRODUCT = "product";
+    private static final String INCLUDE_RECOMMENDATIONS = "recommendations";
+    private static final String INCLUDE_REVIEWS = "reviews";
+    private static final String INCLUDE_CONTENT = "content";
+    private static final Set<String> INCLUDES = Set.of(INCLUDE_PRODUCT, INCLUDE_RECOMMENDATIONS, INCLUDE_REVIEWS, INCLUDE_CONTENT);
+
     private final ServiceUtil serviceUtil;
     private ProductCompositeIntegration integration;
+    private final ProductAggregateCache cache;
+    private final StageMetrics stageMetrics;
+    private final ProductReadModel readModel;
 
     @Override
-    public void createCompositeProduct(ProductAggregate body) {
-        try {
-
-            log.debug("createCompositeProduct: creates a new composite entity for productId: {}", body.getProductId());
+    public Mono<Void> createCompositeProduct(ProductAggregate body) {
+        log.debug("createCompositeProduct: creates a new composite entity for productId: {}", body.getProductId());
 
-            Product product = new Product(body.getProductId(), body.getName(), body.getWeight(), null);
-            integration.createProduct(product);
+        // Once the caller subscribes the product event is published first, then the recommendation and review events
+        // concurrently, off the request thread. The request completes when all of them are sent (or confirmed).
+        List<Mono<?>> publications = new ArrayList<>();
 
-            if (body.getRecommendations() != null) {
-                body.getRecommendations().forEach(r -> {
-                    Recommendation recommendation = new Recommendation(body.getProductId(), r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent(), null);
-                    integration.createRecommendation(recommendation);
-                });
-            }
-
-            if (body.getReviews() != null) {
-                body.getReviews().forEach(r -> {
-                    Review review = new Review(body.getProductId(), r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(), null);
-                    integration.createReview(review);
-                });
-            }
+        Product product = new Product(body.getProductId(), body.getName(), body.getWeight(), null);
+        Mono<?> productPublication = integration.createProduct(product);
 
-            log.debug("createCompositeProduct: composite entites created for productId: {}", body.getProductId());
+        if (body.getRecommendations() != null) {
+            body.getRecommendations().forEach(r -> {
+                Recommendation recommendation = new Recommendation(body.getProductId(), r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent(), null);
+                publications.add(integration.createRecommendation(recommendation));
+            });
+        }
 
-        } catch (RuntimeException re) {
-            log.warn("createCompositeProduct failed", re);
-            throw re;
+        if (body.getReviews() != null) {
+            body.getReviews().forEach(r -> {
+                Review review = new Review(body.getProductId(), r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(), null);
+                publications.add(integration.createReview(review));
+            });
         }
+
+        return Flux.concat(
+                        productPublication.subscribeOn(Schedulers.boundedElastic()),
+                        Flux.fromIterable(publications).flatMap(p -> p.subscribeOn(Schedulers.boundedElastic()), PUBLISH_CONCURRENCY))
+                .then()
+                .doOnSuccess(v -> {
+                    // Only the local cache, at once, the consumed events invalidate the caches of all instances
+                    cache.invalidate(body.getProductId());
+                    log.debug("createCompositeProduct: composite entites created for productId: {}", body.getProductId());
+                })
+                .doOnError(ex -> log.warn("createCompositeProduct failed", ex));
     }
 
     @Override
-    public Mono<ProductAggregate> getCompositeProduct(int productId) {
+    public Mono<ProductAggregate> getCompositeProduct(int productId, int afterRecommendationId, int afterReviewId, int limit, List<String> include) {
 //        log.debug("getCompositeProduct: lookup a product aggregate for productId: {}", productId);
 //
 //        Product product = integration.getProduct(productId);
@@ -66,29 +103,258 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
 //        log.debug("getCompositeProduct: aggregate entity found for productId: {}", productId);
 //
 //        return createProductAggregate(product, recommendations, reviews, serviceUtil.getServiceAddress());
+        if (afterRecommendationId < 0) throw new InvalidInputException("Invalid afterRecommendationId: " + afterRecommendationId);
+        if (afterReviewId < 0) throw new InvalidInputException("Invalid afterReviewId: " + afterReviewId);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) throw new InvalidInputException("Invalid limit: " + limit);
+        include.stream().filter(part -> !part.isEmpty() && !INCLUDES.contains(part)).findFirst().ifPresent(part -> {
+            throw new InvalidInputException("Invalid include: " + part);
+        });
+
+        boolean withRecommendations = include.contains(INCLUDE_RECOMMENDATIONS);
+        boolean withReviews = include.contains(INCLUDE_REVIEWS);
+        boolean withContent = include.contains(INCLUDE_CONTENT);
+        boolean complete = withRecommendations && withReviews && withContent;
+
+        // In the CQRS mode the aggregate is read from the local read model, without calls to the core services
+        if (readModel.isEnabled()) {
+            Optional<ProductAggregate> local = readModel.getProductAggregate(productId, afterRecommendationId, afterReviewId, limit, serviceUtil.getServiceAddress());
+            if (local.isPresent()) {
+                log.debug("getCompositeProduct: found productId: {} in the read model", productId);
+                return ifModified(Mono.just(project(local.get(), withRecommendations, withReviews, withContent)));
+            }
+        }
+
+        // Only the first, default sized, page of an aggregate is cached, and only if it is complete
+        boolean firstPage = afterRecommendationId == 0 && afterReviewId == 0 && limit == DEFAULT_PAGE_SIZE;
+
+        ProductAggregate cached = firstPage ? cache.get(productId) : null;
+        if (cached != null) {
+            log.debug("getCompositeProduct: found a cached aggregate for productId: {}", productId);
+            return ifModified(Mono.just(project(cached, withRecommendations, withReviews, withContent)));
+        }
+
+        // Parts that are not included are not requested from the core services
+        Mono<Optional<List<Recommendation>>> recommendationsPart = withRecommendations ?
+                orFallback(integration.getRecommendations(productId, afterRecommendationId, limit, withContent), "recommendations") :
+                Mono.just(Optional.empty());
+        Mono<Optional<List<Review>>> reviewsPart = withReviews ?
+                orFallback(integration.getReviews(productId, afterReviewId, limit, withContent), "reviews") :
+                Mono.just(Optional.empty());
+
         return Mono.zip(
-            values -> createProductAggregate((Product) values[0], (List<Recommendation>) values[1], (List<Review>) values[2], serviceUtil.getServiceAddress()),
+            values -> {
+                Optional<List<Recommendation>> recommendations = (Optional<List<Recommendation>>) values[1];
+                Optional<List<Review>> reviews = (Optional<List<Review>>) values[2];
+                boolean partial = (withRecommendations && recommendations.isEmpty()) || (withReviews && reviews.isEmpty());
+                return createProductAggregate((Product) values[0],
+                        withRecommendations ? recommendations.orElse(emptyList()) : null,
+                        withReviews ? reviews.orElse(emptyList()) : null,
+                        serviceUtil.getServiceAddress(), partial);
+            },
             integration.getProduct(productId),
-            integration.getRecommendations(productId).collectList(),
-            integration.getReviews(productId).collectList())
+            recommendationsPart,
+            reviewsPart)
+                .doOnNext(aggregate -> {
+                    // Partial aggregates are not cached, the next request retries the failed services
+                    if (firstPage && complete && !aggregate.isPartial()) cache.put(aggregate);
+                })
                 .doOnError(ex -> log.warn("getCompositeProduct failed: {}", ex.toString()))
-                .log();
+                .transform(stageMetrics.mono("composite.get"))
+                .transform(this::ifModified);
+    }
+
+    /**
+     * @return the aggregate without the parts that are not included
+     */
+    static ProductAggregate project(ProductAggregate aggregate, boolean withRecommendations, boolean withReviews, boolean withContent) {
+        if (withRecommendations && withReviews && withContent) return aggregate;
+
+        List<RecommendationSummary> recommendations = (!withRecommendations || aggregate.getRecommendations() == null) ? null :
+                aggregate.getRecommendations().stream()
+                        .map(r -> withContent ? r : new RecommendationSummary(r.getRecommendationId(), r.getAuthor(), r.getRate(), null))
+                        .collect(Collectors.toList());
+        List<ReviewSummary> reviews = (!withReviews || aggregate.getReviews() == null) ? null :
+                aggregate.getReviews().stream()
+                        .map(r -> withContent ? r : new ReviewSummary(r.getReviewId(), r.getAuthor(), r.getSubject(), null))
+                        .collect(Collectors.toList());
+
+        return new ProductAggregate(aggregate.getProductId(), aggregate.getName(), aggregate.getWeight(),
+                recommendations, reviews, aggregate.getServiceAddresses(), aggregate.isPartial());
+    }
+
+    /**
+     * Answers 304 Not Modified if the client already has the aggregate. Partial aggregates get no ETag,
+     * the client shall not keep them.
+     */
+    private Mono<ProductAggregate> ifModified(Mono<ProductAggregate> aggregate) {
+        return aggregate.flatMap(a -> a.isPartial() ? Mono.just(a) : ConditionalGetFilter.ifModified(etag(a), Mono.just(a)));
+    }
+
+    /**
+     * The summaries carry no versions, so the ETag hashes the content of the aggregate, except the service addresses,
+     * they tell which instances answered and not what changed.
+     */
+    static String etag(ProductAggregate aggregate) {
+        ETag etag = new ETag()
+                .add(aggregate.getProductId())
+                .add(aggregate.getName())
+                .add(aggregate.getWeight());
+
+        // Parts that are not included are null, not empty
+        List<RecommendationSummary> recommendations = aggregate.getRecommendations();
+        etag.add(recommendations == null ? null : recommendations.size());
+        if (recommendations != null) {
+            recommendations.forEach(r -> etag.add(r.getRecommendationId()).add(r.getAuthor()).add(r.getRate()).add(r.getContent()));
+        }
+
+        List<ReviewSummary> reviews = aggregate.getReviews();
+        etag.add(reviews == null ? null : reviews.size());
+        if (reviews != null) {
+            reviews.forEach(r -> etag.add(r.getReviewId()).add(r.getAuthor()).add(r.getSubject()).add(r.getContent()));
+        }
+
+        return etag.toString();
     }
 
     @Override
-    public void deleteCompositeProduct(int productId) {
-        log.debug("deleteCompositeProduct: Deletes a product aggregate for productId: {}", productId);
+    public Flux<ProductAggregate> getCompositeProducts(List<Integer> productIds) {
+        log.debug("getCompositeProducts: lookup product aggregates for productIds: {}", productIds);
+
+        if (productIds.isEmpty() || productIds.size() > MAX_BATCH_SIZE) throw new InvalidInputException("Invalid number of productIds: " + productIds.size());
+
+        // 1. Serve what we can from the aggregate cache
+        List<Integer> requestedIds = new ArrayList<>(new LinkedHashSet<>(productIds));
+        Map<Integer, ProductAggregate> aggregates = new HashMap<>();
+        List<Integer> missingIds = new ArrayList<>();
+        requestedIds.forEach(productId -> {
+            ProductAggregate cached = cache.get(productId);
+            if (cached != null) aggregates.put(productId, cached);
+            else missingIds.add(productId);
+        });
+
+        if (missingIds.isEmpty()) {
+            return Flux.fromIterable(requestedIds).map(aggregates::get);
+        }
+
+        // 2. Fetch the rest with one bulk call per core service. The recommendations and reviews are streamed through,
+        // grouped by product in the requested order, and each aggregate is emitted as soon as its parts are complete,
+        // so only the parts of the products in progress are held in memory
+        Map<Integer, Integer> positions = new HashMap<>();
+        for (int i = 0; i < requestedIds.size(); i++) positions.put(requestedIds.get(i), i);
+        AtomicBoolean partial = new AtomicBoolean(false);
+
+        // At most MAX_BATCH_SIZE products without their parts, they are collected to emit them in the requested order
+        Flux<Part> products = integration.getProducts(missingIds).collectMap(Product::getProductId)
+                .flatMapMany(fetched -> Flux.fromIterable(requestedIds)
+                        .filter(productId -> aggregates.containsKey(productId) || fetched.containsKey(productId))
+                        .map(productId -> new Part(positions.get(productId),
+                                aggregates.containsKey(productId) ? aggregates.get(productId) : fetched.get(productId))));
+        Flux<Part> recommendations = orFallback(integration.getRecommendationsForProducts(missingIds), "recommendations", partial)
+                .filter(r -> positions.containsKey(r.getProductId()))
+                .map(r -> new Part(positions.get(r.getProductId()), r));
+        Flux<Part> reviews = orFallback(integration.getReviewsForProducts(missingIds), "reviews", partial)
+                .filter(r -> positions.containsKey(r.getProductId()))
+                .map(r -> new Part(positions.get(r.getProductId()), r));
+
+        // 3. Every source is ordered by position, merging them keeps the parts of a product together
+        return Flux.mergeComparing(Comparator.comparingInt(Part::getPosition), products, recommendations, reviews)
+                .bufferUntilChanged(Part::getPosition)
+                .<ProductAggregate>handle((parts, sink) -> {
+                    // Products that do not exist are omitted
+                    ProductAggregate aggregate = toAggregate(parts, partial.get());
+                    if (aggregate != null) sink.next(aggregate);
+                })
+                .doOnError(ex -> log.warn("getCompositeProducts failed: {}", ex.toString()));
+    }
+
+    /**
+     * A cached aggregate, a product, a recommendation or a review, at the position of its product in the request
+     */
+    private static class Part {
+        private final int position;
+        private final Object value;
+
+        Part(int position, Object value) {
+            this.position = position;
+            this.value = value;
+        }
+
+        int getPosition() {
+            return position;
+        }
+
+        Object getValue() {
+            return value;
+        }
+    }
 
-        integration.deleteProduct(productId);
+    /**
+     * A part that failed marks the aggregates that are completed after the failure as partial, they are not cached.
+     *
+     * @return the aggregate of the parts of one product, or null if there is no such product
+     */
+    private ProductAggregate toAggregate(List<Part> parts, boolean partial) {
+        Product product = null;
+        List<Recommendation> recommendations = new ArrayList<>();
+        List<Review> reviews = new ArrayList<>();
+        for (Part part : parts) {
+            Object value = part.getValue();
+            if (value instanceof ProductAggregate) return (ProductAggregate) value;
+            if (value instanceof Product) product = (Product) value;
+            else if (value instanceof Recommendation) recommendations.add((Recommendation) value);
+            else reviews.add((Review) value);
+        }
+        if (product == null) return null;
 
-        integration.deleteRecommendations(productId);
+        ProductAggregate aggregate = createProductAggregate(product, recommendations, reviews, serviceUtil.getServiceAddress(), partial);
+        if (!partial) cache.put(aggregate);
+        return aggregate;
+    }
 
-        integration.deleteReviews(productId);
+    @Override
+    public Mono<Void> deleteCompositeProduct(int productId) {
+        log.debug("deleteCompositeProduct: Deletes a product aggregate for productId: {}", productId);
+
+        return Flux.concat(
+                        integration.deleteProduct(productId),
+                        integration.deleteRecommendations(productId),
+                        integration.deleteReviews(productId))
+                .then()
+                .doOnSuccess(v -> {
+                    cache.invalidate(productId);
+                    log.debug("getCompositeProduct: aggregate entities deleted for productId: {}", productId);
+                })
+                .doOnError(ex -> log.warn("deleteCompositeProduct failed: {}", ex.toString()));
+    }
+
+    /**
+     * Recommendations and reviews are optional parts of an aggregate. If they fail or time out, the aggregate
+     * is returned without them and marked as partial instead of failing the whole request.
+     *
+     * @return the items, or an empty Optional if they could not be retrieved
+     */
+    private <T> Mono<Optional<List<T>>> orFallback(Flux<T> items, String what) {
+        return items.collectList()
+                .map(Optional::of)
+                .onErrorResume(ex -> {
+                    log.warn("Failed to get {}, returns a partial response: {}", what, ex.toString());
+                    return Mono.just(Optional.empty());
+                });
+    }
 
-        log.debug("getCompositeProduct: aggregate entities deleted for productId: {}", productId);
+    /**
+     * The streamed variant of orFallback, the items are passed on and a failure ends the stream and sets partial.
+     */
+    private <T> Flux<T> orFallback(Flux<T> items, String what, AtomicBoolean partial) {
+        return items.onErrorResume(ex -> {
+            log.warn("Failed to get {}, returns partial responses: {}", what, ex.toString());
+            partial.set(true);
+            return Flux.empty();
+        });
     }
 
-    private ProductAggregate createProductAggregate(Product product, List<Recommendation> recommendations, List<Review> reviews, String serviceAddress) {
+    // Package private and static for the benchmarks
+    static ProductAggregate createProductAggregate(Product product, List<Recommendation> recommendations, List<Review> reviews, String serviceAddress, boolean partial) {
 
         // 1. Setup product info
         int productId = product.getProductId();
@@ -113,6 +379,6 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         String recommendationAddress = (recommendations != null && recommendations.size() > 0) ? recommendations.get(0).getServiceAddress() : "";
         ServiceAddresses serviceAddresses = new ServiceAddresses(serviceAddress, productAddress, reviewAddress, recommendationAddress);
 
-        return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses);
+        return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses, partial);
     }
 }
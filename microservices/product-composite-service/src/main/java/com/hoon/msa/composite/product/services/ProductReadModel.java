@@ -0,0 +1,400 @@
+package com.hoon.msa.composite.product.services;
+
+import com.hoon.api.composite.product.ProductAggregate;
+import com.hoon.api.core.product.Product;
+import com.hoon.api.core.recommendation.Recommendation;
+import com.hoon.api.core.review.Review;
+import com.hoon.api.event.Event;
+import com.hoon.util.exceptions.EventProcessingException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Local, incrementally updated store of the product aggregates, the query side of the CQRS mode.
+ *
+ * With app.product-composite.read-model.enabled the composite also consumes the product, recommendation and review
+ * events it publishes (see ReadModelMessageProcessor) and applies them here, so a product aggregate can be served
+ * from one local lookup without calling the core services. Products that are not in the store, e.g. products
+ * created before the composite was started, are still read from the core services; load them with a rebuild,
+ * see ReadModelEndpoint.
+ *
+ * Like the core services, creates with an invalid productId and creates of an entity that already exists are ignored,
+ * the first created entity is kept.
+ *
+ * A deleted product leaves a tombstone. Recommendation and review creates published before the delete, but consumed
+ * after it, are dropped instead of bringing the old rows back when the productId is created again. Entries without a
+ * product, tombstones and rows whose product never arrives, are removed once they have not changed for
+ * app.product-composite.read-model.orphan-expiry.
+ *
+ * The time from the creation of an event until it is applied is exposed as composite.read-model.lag, the age of the
+ * newest applied event, or the uptime before the first one, as the gauge composite.read-model.staleness (seconds).
+ * The staleness keeps growing while no events arrive, also when nothing has changed. The number of stored products
+ * is exposed as composite.read-model.size.
+ */
+@Slf4j
+@Component
+public class ProductReadModel implements InitializingBean, DisposableBean {
+    private static final int REBUILD_BATCH_SIZE = 100;
+    // The batch reads of the core services return at most this many recommendations and reviews per product
+    private static final int CORE_BATCH_LIMIT = 100;
+    // The rest is read page by page, with the largest page the core services give
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    private static class Entry {
+        private volatile Product product;
+        // Creation time of the delete event of the product, set on tombstones
+        private volatile LocalDateTime deletedAt;
+        private volatile long changedAt = System.nanoTime();
+        private final ConcurrentSkipListMap<Integer, Recommendation> recommendations = new ConcurrentSkipListMap<>();
+        private final ConcurrentSkipListMap<Integer, Review> reviews = new ConcurrentSkipListMap<>();
+    }
+
+    private final boolean enabled;
+    private final Duration orphanExpiry;
+    private final ProductCompositeIntegration integration;
+
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Timer lag;
+    // Creation time of the newest applied event, the start of the instance before the first one
+    private final AtomicReference<LocalDateTime> newestEventCreatedAt = new AtomicReference<>(LocalDateTime.now());
+
+    private Scheduler sweepScheduler;
+    private Disposable sweeps;
+
+    @Autowired
+    public ProductReadModel(ProductCompositeIntegration integration,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.product-composite.read-model.enabled:false}") boolean enabled,
+                            @Value("${app.product-composite.read-model.orphan-expiry:10m}") Duration orphanExpiry) {
+        this.integration = integration;
+        this.enabled = enabled;
+        this.orphanExpiry = orphanExpiry;
+
+        this.lag = Timer.builder("composite.read-model.lag")
+                .description("Time from the creation of an event until it is applied to the read model")
+                .register(meterRegistry);
+        Gauge.builder("composite.read-model.staleness", this, readModel -> readModel.staleness().toMillis() / 1000.0)
+                .description("Age of the newest event applied to the read model")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("composite.read-model.size", this, ProductReadModel::size)
+                .description("Products in the read model")
+                .register(meterRegistry);
+
+        if (enabled) log.info("Serves product aggregates from the read model");
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!enabled) return;
+
+        sweepScheduler = Schedulers.newSingle("read-model-sweep", true);
+        sweeps = Flux.interval(orphanExpiry, sweepScheduler)
+                .subscribe(tick -> removeOrphans(orphanExpiry));
+    }
+
+    @Override
+    public void destroy() {
+        if (!enabled) return;
+
+        sweeps.dispose();
+        sweepScheduler.dispose();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the page of the aggregate, or an empty Optional if the product is not in the read model
+     */
+    public Optional<ProductAggregate> getProductAggregate(int productId, int afterRecommendationId, int afterReviewId, int limit, String serviceAddress) {
+        Entry entry = entries.get(productId);
+        Product product = (entry == null) ? null : entry.product;
+        if (product == null) return Optional.empty();
+
+        List<Recommendation> recommendations = entry.recommendations.values().stream()
+                .filter(r -> r.getRecommendationId() > afterRecommendationId)
+                .limit(limit)
+                .collect(Collectors.toList());
+        List<Review> reviews = entry.reviews.values().stream()
+                .filter(r -> r.getReviewId() > afterReviewId)
+                .limit(limit)
+                .collect(Collectors.toList());
+
+        return Optional.of(ProductCompositeServiceImpl.createProductAggregate(product, recommendations, reviews, serviceAddress, false));
+    }
+
+    public void applyProductEvent(Event<Integer, Product> event) {
+        switch (event.getEventType()) {
+
+        case CREATE:
+            Product product = event.getData();
+            if (isInvalid(event, product == null ? 0 : product.getProductId())) break;
+
+            // Recommendations and reviews may arrive before their product, keep them
+            entries.compute(event.getKey(), (key, entry) -> {
+                if (entry == null) entry = new Entry();
+                if (isBeforeDeletion(event, entry)) return entry;
+                if (entry.product != null) {
+                    log.warn("Ignores the create event of the existing product {}", key);
+                    return entry;
+                }
+                entry.product = product;
+                entry.deletedAt = null;
+                entry.changedAt = System.nanoTime();
+                return entry;
+            });
+            break;
+
+        case DELETE:
+            Entry tombstone = new Entry();
+            tombstone.deletedAt = event.getEventCreatedAt() == null ? LocalDateTime.now() : event.getEventCreatedAt();
+            entries.put(event.getKey(), tombstone);
+            break;
+
+        default:
+            throw incorrectEventType(event);
+        }
+        applied(event);
+    }
+
+    public void applyRecommendationEvent(Event<Integer, Recommendation> event) {
+        switch (event.getEventType()) {
+
+        case CREATE:
+            Recommendation recommendation = event.getData();
+            if (isInvalid(event, recommendation == null ? 0 : recommendation.getProductId())) break;
+
+            entries.compute(event.getKey(), (key, entry) -> {
+                if (entry == null) entry = new Entry();
+                if (isBeforeDeletion(event, entry)) return entry;
+                if (entry.recommendations.putIfAbsent(recommendation.getRecommendationId(), recommendation) != null) {
+                    log.warn("Ignores the create event of the existing recommendation {} of product {}", recommendation.getRecommendationId(), key);
+                }
+                entry.changedAt = System.nanoTime();
+                return entry;
+            });
+            break;
+
+        case DELETE:
+            Entry entry = entries.get(event.getKey());
+            if (entry != null) entry.recommendations.clear();
+            break;
+
+        default:
+            throw incorrectEventType(event);
+        }
+        applied(event);
+    }
+
+    public void applyReviewEvent(Event<Integer, Review> event) {
+        switch (event.getEventType()) {
+
+        case CREATE:
+            Review review = event.getData();
+            if (isInvalid(event, review == null ? 0 : review.getProductId())) break;
+
+            entries.compute(event.getKey(), (key, entry) -> {
+                if (entry == null) entry = new Entry();
+                if (isBeforeDeletion(event, entry)) return entry;
+                if (entry.reviews.putIfAbsent(review.getReviewId(), review) != null) {
+                    log.warn("Ignores the create event of the existing review {} of product {}", review.getReviewId(), key);
+                }
+                entry.changedAt = System.nanoTime();
+                return entry;
+            });
+            break;
+
+        case DELETE:
+            Entry entry = entries.get(event.getKey());
+            if (entry != null) entry.reviews.clear();
+            break;
+
+        default:
+            throw incorrectEventType(event);
+        }
+        applied(event);
+    }
+
+    /**
+     * Replaces the products within fromProductId - toProductId with their current state in the core services,
+     * REBUILD_BATCH_SIZE products per batch call. Products that no longer exist are removed.
+     *
+     * The batch calls return the first CORE_BATCH_LIMIT recommendations and reviews of each product, the rest of a
+     * product that reaches the limit is read with the paged calls of the product, until a page comes back short.
+     *
+     * Events consumed while a batch is in flight may be overwritten by the older state of the batch,
+     * rebuild before sending traffic to the read model, or rebuild again.
+     *
+     * @return the number of products loaded
+     */
+    public Mono<Integer> rebuild(int fromProductId, int toProductId) {
+        log.info("Rebuilds the read model for productIds {} - {}", fromProductId, toProductId);
+
+        return Flux.range(fromProductId, toProductId - fromProductId + 1)
+                .buffer(REBUILD_BATCH_SIZE)
+                .concatMap(productIds -> Mono.zip(
+                        integration.getProducts(productIds).collectList(),
+                        integration.getRecommendationsForProducts(productIds).collectList(),
+                        integration.getReviewsForProducts(productIds).collectList())
+                        .map(fetched -> collect(fetched.getT1(), fetched.getT2(), fetched.getT3()))
+                        .flatMap(this::readRemainingRows)
+                        .map(loaded -> load(productIds, loaded)))
+                .reduce(0, Integer::sum)
+                .doOnSuccess(loaded -> log.info("Rebuilt the read model for productIds {} - {}, loaded {} products", fromProductId, toProductId, loaded));
+    }
+
+    /**
+     * @return the number of products, tombstones and entries that only hold recommendations or reviews are not counted
+     */
+    public int size() {
+        return (int) entries.values().stream().filter(entry -> entry.product != null).count();
+    }
+
+    /**
+     * Removes the entries without a product that have not changed for olderThan
+     *
+     * @return the number of entries removed
+     */
+    public int removeOrphans(Duration olderThan) {
+        long changedBefore = System.nanoTime() - olderThan.toNanos();
+        AtomicInteger removed = new AtomicInteger();
+        entries.keySet().forEach(productId -> entries.computeIfPresent(productId, (key, entry) -> {
+            if (entry.product != null || entry.changedAt - changedBefore > 0) return entry;
+            removed.incrementAndGet();
+            return null;
+        }));
+
+        if (removed.get() > 0) log.debug("Removed {} entries without a product from the read model", removed.get());
+        return removed.get();
+    }
+
+    public Duration staleness() {
+        Duration age = Duration.between(newestEventCreatedAt.get(), LocalDateTime.now());
+        return age.isNegative() ? Duration.ZERO : age;
+    }
+
+    private Map<Integer, Entry> collect(List<Product> products, List<Recommendation> recommendations, List<Review> reviews) {
+        Map<Integer, Entry> loaded = new ConcurrentHashMap<>();
+        products.forEach(product -> {
+            Entry entry = new Entry();
+            entry.product = product;
+            loaded.put(product.getProductId(), entry);
+        });
+        recommendations.forEach(r -> {
+            Entry entry = loaded.get(r.getProductId());
+            if (entry != null) entry.recommendations.put(r.getRecommendationId(), r);
+        });
+        reviews.forEach(r -> {
+            Entry entry = loaded.get(r.getProductId());
+            if (entry != null) entry.reviews.put(r.getReviewId(), r);
+        });
+        return loaded;
+    }
+
+    private Mono<Map<Integer, Entry>> readRemainingRows(Map<Integer, Entry> loaded) {
+        return Flux.fromIterable(loaded.entrySet())
+                .concatMap(loadedEntry -> {
+                    int productId = loadedEntry.getKey();
+                    Entry entry = loadedEntry.getValue();
+
+                    Flux<Recommendation> recommendations = entry.recommendations.size() < CORE_BATCH_LIMIT ? Flux.empty()
+                            : pages(entry.recommendations.lastKey(),
+                                    afterId -> integration.getRecommendations(productId, afterId, REBUILD_PAGE_SIZE, true),
+                                    Recommendation::getRecommendationId);
+                    Flux<Review> reviews = entry.reviews.size() < CORE_BATCH_LIMIT ? Flux.empty()
+                            : pages(entry.reviews.lastKey(),
+                                    afterId -> integration.getReviews(productId, afterId, REBUILD_PAGE_SIZE, true),
+                                    Review::getReviewId);
+
+                    return Mono.when(
+                            recommendations.doOnNext(r -> entry.recommendations.put(r.getRecommendationId(), r)),
+                            reviews.doOnNext(r -> entry.reviews.put(r.getReviewId(), r)));
+                })
+                .then(Mono.just(loaded));
+    }
+
+    /**
+     * Reads the pages after afterId, each page starts after the last id of the previous one, until a page comes back short
+     */
+    private static <T> Flux<T> pages(int afterId, Function<Integer, Flux<T>> readPage, ToIntFunction<T> id) {
+        return readPage.apply(afterId).collectList()
+                .expand(page -> page.size() < REBUILD_PAGE_SIZE ? Mono.empty()
+                        : readPage.apply(id.applyAsInt(page.get(page.size() - 1))).collectList())
+                .flatMapIterable(page -> page);
+    }
+
+    private int load(List<Integer> productIds, Map<Integer, Entry> loaded) {
+        List<Integer> missingIds = new ArrayList<>(productIds);
+        missingIds.removeAll(loaded.keySet());
+        missingIds.forEach(entries::remove);
+        entries.putAll(loaded);
+
+        return loaded.size();
+    }
+
+    private void applied(Event<Integer, ?> event) {
+        LocalDateTime createdAt = event.getEventCreatedAt();
+        if (createdAt == null) return;
+
+        long millis = Math.max(Duration.between(createdAt, LocalDateTime.now()).toMillis(), 0);
+        lag.record(millis, TimeUnit.MILLISECONDS);
+        newestEventCreatedAt.accumulateAndGet(createdAt, (newest, created) -> created.isAfter(newest) ? created : newest);
+    }
+
+    /**
+     * @return true for the events published before the product was deleted, they belong to the deleted product
+     */
+    private boolean isBeforeDeletion(Event<Integer, ?> event, Entry entry) {
+        LocalDateTime createdAt = event.getEventCreatedAt();
+        if (entry.deletedAt == null || createdAt == null || createdAt.isAfter(entry.deletedAt)) return false;
+
+        log.debug("Ignores the create event {} published before product {} was deleted", event.getEventId(), event.getKey());
+        return true;
+    }
+
+    /**
+     * Rejects the creates that the core services reject: without an entity or with an invalid productId
+     */
+    private boolean isInvalid(Event<Integer, ?> event, int productId) {
+        if (event.getData() != null && productId >= 1 && event.getKey() != null && event.getKey() == productId) return false;
+
+        log.warn("Ignores the invalid create event {} for productId: {}", event.getEventId(), event.getKey());
+        return true;
+    }
+
+    private EventProcessingException incorrectEventType(Event<Integer, ?> event) {
+        String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
+        log.warn(errorMessage);
+        return new EventProcessingException(errorMessage);
+    }
+}
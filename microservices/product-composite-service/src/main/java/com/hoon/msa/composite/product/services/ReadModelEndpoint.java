@@ -0,0 +1,54 @@
+package com.hoon.msa.composite.product.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * $HOST:$PORT/actuator/readmodel shows the size and staleness of the read model,
+ * POST $HOST:$PORT/actuator/readmodel with {"fromProductId": 1, "toProductId": 1000} rebuilds it from the core services.
+ */
+@Component
+@Endpoint(id = "readmodel")
+@ConditionalOnProperty(name = "app.product-composite.read-model.enabled", havingValue = "true")
+public class ReadModelEndpoint {
+    private static final int MAX_REBUILD_RANGE = 1_000_000;
+
+    private final ProductReadModel readModel;
+
+    @Autowired
+    public ReadModelEndpoint(ProductReadModel readModel) {
+        this.readModel = readModel;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("size", readModel.size());
+        status.put("staleness", readModel.staleness().toString());
+        return status;
+    }
+
+    @WriteOperation
+    public Mono<Map<String, Object>> rebuild(int fromProductId, int toProductId) {
+        if (fromProductId < 1 || toProductId < fromProductId || toProductId - fromProductId >= MAX_REBUILD_RANGE) {
+            // Answered with 400 Bad Request by the actuator, the controller advice does not apply to endpoints
+            String message = "Invalid product id range: " + fromProductId + " - " + toProductId;
+            return Mono.error(new InvalidEndpointRequestException(message, message));
+        }
+
+        return readModel.rebuild(fromProductId, toProductId).map(loaded -> {
+            Map<String, Object> result = new LinkedHashMap<>(status());
+            result.put("loaded", loaded);
+            return result;
+        });
+    }
+}
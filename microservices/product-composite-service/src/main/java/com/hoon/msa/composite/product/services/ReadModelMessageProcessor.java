@@ -0,0 +1,65 @@
+package com.hoon.msa.composite.product.services;
+
+import com.hoon.api.core.product.Product;
+import com.hoon.api.core.recommendation.Recommendation;
+import com.hoon.api.core.review.Review;
+import com.hoon.api.event.Event;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.stream.annotation.EnableBinding;
+import org.springframework.cloud.stream.annotation.Input;
+import org.springframework.cloud.stream.annotation.StreamListener;
+import org.springframework.messaging.SubscribableChannel;
+
+/**
+ * Consumes the product, recommendation and review events into the read model. The bindings have no consumer group,
+ * every instance receives every event for its own read model.
+ * Only bound with app.product-composite.read-model.enabled, see the read-model profile.
+ */
+@Slf4j
+@ConditionalOnProperty(name = "app.product-composite.read-model.enabled", havingValue = "true")
+@EnableBinding(ReadModelMessageProcessor.ReadModelSinks.class)
+public class ReadModelMessageProcessor {
+
+    private final ProductReadModel readModel;
+
+    public interface ReadModelSinks {
+
+        String INPUT_PRODUCTS = "input-products";
+        String INPUT_RECOMMENDATIONS = "input-recommendations";
+        String INPUT_REVIEWS = "input-reviews";
+
+        @Input(INPUT_PRODUCTS)
+        SubscribableChannel inputProducts();
+
+        @Input(INPUT_RECOMMENDATIONS)
+        SubscribableChannel inputRecommendations();
+
+        @Input(INPUT_REVIEWS)
+        SubscribableChannel inputReviews();
+    }
+
+    @Autowired
+    public ReadModelMessageProcessor(ProductReadModel readModel) {
+        this.readModel = readModel;
+    }
+
+    @StreamListener(target = ReadModelSinks.INPUT_PRODUCTS)
+    public void processProduct(Event<Integer, Product> event) {
+        log.debug("Applies a {} product event for productId: {}", event.getEventType(), event.getKey());
+        readModel.applyProductEvent(event);
+    }
+
+    @StreamListener(target = ReadModelSinks.INPUT_RECOMMENDATIONS)
+    public void processRecommendation(Event<Integer, Recommendation> event) {
+        log.debug("Applies a {} recommendation event for productId: {}", event.getEventType(), event.getKey());
+        readModel.applyRecommendationEvent(event);
+    }
+
+    @StreamListener(target = ReadModelSinks.INPUT_REVIEWS)
+    public void processReview(Event<Integer, Review> event) {
+        log.debug("Applies a {} review event for productId: {}", event.getEventType(), event.getKey());
+        readModel.applyReviewEvent(event);
+    }
+}
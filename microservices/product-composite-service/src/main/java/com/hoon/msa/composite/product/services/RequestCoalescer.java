@@ -0,0 +1,25 @@
+package com.hoon.msa.composite.product.services;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent requests for the same key (single-flight).
+ *
+ * While a request for a key is in flight, every further subscriber for that key shares the same Mono
+ * and receives the same result. The entry is dropped as soon as the request terminates, so results are never
+ * reused after completion; caching completed results is the job of {@link ProductAggregateCache}.
+ */
+public class RequestCoalescer<K, V> {
+
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    public Mono<V> coalesce(K key, Supplier<Mono<V>> request) {
+        return Mono.defer(() -> inFlight.computeIfAbsent(key, k -> request.get()
+                .doFinally(signal -> inFlight.remove(k))
+                .cache()));
+    }
+}
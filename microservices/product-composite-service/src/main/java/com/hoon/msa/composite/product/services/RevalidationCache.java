@@ -0,0 +1,108 @@
+package com.hoon.msa.composite.product.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The last response body and ETag of the GET requests to the core services, keyed by the request.
+ *
+ * A request for a cached response is sent with If-None-Match, if the core service answers 304 Not Modified
+ * the cached body is returned, so an unchanged product or page is neither serialized nor transferred again.
+ * Unlike the aggregate cache, entries are never served without asking the core service.
+ * Entries that are not requested for expire-after-access are dropped, they are not worth their memory.
+ *
+ * Revalidated responses are counted as composite.integration.revalidated,
+ * the cache metrics are exposed with tag cache=coreResponses
+ */
+@Slf4j
+@Component
+public class RevalidationCache {
+    static final String CACHE_NAME = "coreResponses";
+
+    private final boolean enabled;
+    private final Cache<String, Validated> cache;
+    private final Counter revalidated;
+
+    private static class Validated {
+        private final String etag;
+        private final Object body;
+
+        Validated(String etag, Object body) {
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+
+    @Autowired
+    public RevalidationCache(MeterRegistry meterRegistry,
+                             @Value("${app.product-composite.revalidation.enabled:true}") boolean enabled,
+                             @Value("${app.product-composite.revalidation.maximum-size:10000}") long maximumSize,
+                             @Value("${app.product-composite.revalidation.expire-after-access:10m}") Duration expireAfterAccess) {
+
+        log.info("Creates a revalidation cache, enabled = {}, maximumSize = {}, expireAfterAccess = {}", enabled, maximumSize, expireAfterAccess);
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+        this.revalidated = Counter.builder("composite.integration.revalidated")
+                .description("Responses of the core services that were not modified and taken from the revalidation cache")
+                .register(meterRegistry);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * @return false if the responses are neither kept nor revalidated
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param key identifies the request, e.g. its expanded URI
+     * @param request sends the request, with the headers set by the given consumer
+     * @return the body of the response, or the cached body if it is not modified
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> exchange(String key, Function<Consumer<HttpHeaders>, Mono<ResponseEntity<T>>> request) {
+        if (!enabled) {
+            return request.apply(headers -> {}).flatMap(response -> Mono.justOrEmpty(response.getBody()));
+        }
+
+        return Mono.defer(() -> {
+            Validated cached = cache.getIfPresent(key);
+
+            return request.apply(headers -> {
+                        if (cached != null) headers.setIfNoneMatch(cached.etag);
+                    })
+                    .flatMap(response -> {
+                        if (cached != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                            log.debug("exchange: {} is not modified", key);
+                            revalidated.increment();
+                            return Mono.just((T) cached.body);
+                        }
+
+                        String etag = response.getHeaders().getETag();
+                        if (etag != null && response.getBody() != null) cache.put(key, new Validated(etag, response.getBody()));
+                        return Mono.justOrEmpty(response.getBody());
+                    });
+        });
+    }
+}
@@ -0,0 +1,70 @@
+package com.hoon.msa.composite.product;
+
+import com.hoon.api.composite.product.ProductAggregate;
+import com.hoon.api.core.review.Review;
+import com.hoon.api.event.Event;
+import com.hoon.msa.composite.product.services.CacheInvalidationMessageProcessor;
+import com.hoon.msa.composite.product.services.ProductAggregateCache;
+import com.hoon.msa.composite.product.services.ProductCompositeIntegration;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.messaging.support.GenericMessage;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+
+import static com.hoon.api.event.Event.Type.CREATE;
+import static com.hoon.api.event.Event.Type.DELETE;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@SpringBootTest
+class CacheInvalidationTests {
+	private static final int PRODUCT_ID_DELETED = 1;
+	private static final int PRODUCT_ID_REVIEWED = 2;
+
+	@Autowired
+	private CacheInvalidationMessageProcessor.InvalidationSinks channels;
+
+	@Autowired
+	private ProductAggregateCache cache;
+
+	@MockBean
+	private ProductCompositeIntegration compositeIntegration;
+
+	@Test
+	public void consumedEventEvictsTheAggregate() {
+
+		cache.put(aggregate(PRODUCT_ID_DELETED));
+
+		channels.invalidateProducts().send(new GenericMessage<>(new Event(DELETE, PRODUCT_ID_DELETED, null)));
+
+		assertNull(cache.get(PRODUCT_ID_DELETED));
+	}
+
+	@Test
+	public void aggregateCachedBeforeTheCoreServiceAppliedTheEventIsEvictedAgain() {
+
+		VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+		CacheInvalidationMessageProcessor processor = new CacheInvalidationMessageProcessor(cache, Duration.ofSeconds(2), scheduler);
+
+		cache.put(aggregate(PRODUCT_ID_REVIEWED));
+		processor.processReview(new Event(CREATE, PRODUCT_ID_REVIEWED, new Review(PRODUCT_ID_REVIEWED, 1, "a", "s", "c", null)));
+		assertNull(cache.get(PRODUCT_ID_REVIEWED));
+
+		// A read right after the event caches the aggregate without the new review
+		cache.put(aggregate(PRODUCT_ID_REVIEWED));
+		scheduler.advanceTimeBy(Duration.ofMillis(1999));
+		assertNotNull(cache.get(PRODUCT_ID_REVIEWED));
+
+		// Evicted again once the invalidation delay has passed
+		scheduler.advanceTimeBy(Duration.ofMillis(1));
+		assertNull(cache.get(PRODUCT_ID_REVIEWED));
+	}
+
+	private ProductAggregate aggregate(int productId) {
+		return new ProductAggregate(productId, "name", 1, null, null, null);
+	}
+}
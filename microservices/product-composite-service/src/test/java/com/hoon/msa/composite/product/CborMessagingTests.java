@@ -0,0 +1,71 @@
+package com.hoon.msa.composite.product;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.hoon.api.composite.product.ProductAggregate;
+import com.hoon.api.core.product.Product;
+import com.hoon.api.event.Event;
+import com.hoon.msa.composite.product.services.ProductCompositeIntegration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.test.binder.MessageCollector;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+
+import static com.hoon.api.event.Event.Type.CREATE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static reactor.core.publisher.Mono.just;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT)
+@ActiveProfiles("cbor-events")
+class CborMessagingTests {
+
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private ProductCompositeIntegration.MessageSources channels;
+
+	@Autowired
+	private MessageCollector collector;
+
+	private BlockingQueue<Message<?>> queueProducts = null;
+
+	@BeforeEach
+	public void setUp() {
+		queueProducts = collector.forChannel(channels.outputProducts());
+		queueProducts.clear();
+	}
+
+	@Test
+	public void createCompositeProductPublishesCbor() throws IOException {
+
+		client.post()
+				.uri("/product-composite")
+				.body(just(new ProductAggregate(1, "name", 1, null, null, null)), ProductAggregate.class)
+				.exchange()
+				.expectStatus().isOk();
+
+		assertEquals(1, queueProducts.size());
+		Message<?> message = queueProducts.poll();
+		assertNotNull(message);
+		assertTrue(String.valueOf(message.getHeaders().get(MessageHeaders.CONTENT_TYPE)).startsWith("application/cbor"));
+
+		Event<Integer, Product> event = Jackson2ObjectMapperBuilder.cbor().build()
+				.readValue((byte[]) message.getPayload(), new TypeReference<Event<Integer, Product>>() {});
+		assertEquals(CREATE, event.getEventType());
+		assertEquals(Integer.valueOf(1), event.getKey());
+		assertEquals("name", event.getData().getName());
+		assertNotNull(event.getEventCreatedAt());
+	}
+}
@@ -0,0 +1,156 @@
+package com.hoon.msa.composite.product;
+
+import com.hoon.msa.composite.product.services.DownstreamPolicy;
+import com.hoon.util.exceptions.NotFoundException;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DownstreamPolicyTests {
+
+    private static final int SLIDING_WINDOW_SIZE = 4;
+    private static final int MAX_CONCURRENT_CALLS = 2;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger downstreamCalls = new AtomicInteger();
+
+    @Test
+    public void slowCallTimesOut() {
+
+        DownstreamPolicy policy = policy(Duration.ofMillis(100), false, Duration.ofMillis(10));
+
+        StepVerifier.create(policy.apply(() -> call(Duration.ofSeconds(1))))
+                .verifyError(TimeoutException.class);
+    }
+
+    @Test
+    public void slowCallIsHedged() {
+
+        DownstreamPolicy policy = policy(Duration.ofSeconds(1), true, Duration.ofMillis(50));
+
+        // The first call is slow, the hedged second call answers in time
+        StepVerifier.create(policy.apply(() -> call(downstreamCalls.get() == 0 ? Duration.ofSeconds(5) : Duration.ofMillis(10))))
+                .expectNext(2)
+                .verifyComplete();
+
+        assertEquals(2, downstreamCalls.get());
+        assertEquals(1, meterRegistry.get("composite.downstream.hedges").counter().count());
+    }
+
+    @Test
+    public void fastCallIsNotHedged() {
+
+        DownstreamPolicy policy = policy(Duration.ofSeconds(1), true, Duration.ofMillis(200));
+
+        StepVerifier.create(policy.apply(() -> call(Duration.ofMillis(10))))
+                .expectNext(1)
+                .verifyComplete();
+
+        assertEquals(1, downstreamCalls.get());
+    }
+
+    @Test
+    public void failingCallsOpenTheCircuit() {
+
+        DownstreamPolicy policy = policy(Duration.ofSeconds(1), false, Duration.ofMillis(10));
+
+        for (int i = 0; i < SLIDING_WINDOW_SIZE; i++) {
+            StepVerifier.create(policy.apply(() -> Mono.error(new RuntimeException("Boom"))))
+                    .verifyErrorMessage("Boom");
+        }
+
+        // The downstream service is not called while the circuit is open
+        StepVerifier.create(policy.apply(() -> call(Duration.ZERO)))
+                .verifyError(CallNotPermittedException.class);
+        assertEquals(0, downstreamCalls.get());
+
+        Health health = policy.health(new Health.Builder().up());
+        assertEquals(Status.DOWN, health.getStatus());
+        assertEquals("OPEN", health.getDetails().get("circuitBreakerState"));
+    }
+
+    @Test
+    public void notFoundDoesNotOpenTheCircuit() {
+
+        DownstreamPolicy policy = policy(Duration.ofSeconds(1), false, Duration.ofMillis(10));
+
+        for (int i = 0; i < SLIDING_WINDOW_SIZE; i++) {
+            StepVerifier.create(policy.apply(() -> Mono.error(new NotFoundException("Not found"))))
+                    .verifyError(NotFoundException.class);
+        }
+
+        StepVerifier.create(policy.apply(() -> call(Duration.ZERO)))
+                .expectNext(1)
+                .verifyComplete();
+
+        Health health = policy.health(new Health.Builder().up());
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals("CLOSED", health.getDetails().get("circuitBreakerState"));
+    }
+
+    @Test
+    public void callsOverTheBulkheadAreRejected() {
+
+        DownstreamPolicy policy = policy(Duration.ofSeconds(1), false, Duration.ofMillis(10));
+
+        // Occupy all places of the bulkhead with slow calls
+        for (int i = 0; i < MAX_CONCURRENT_CALLS; i++) {
+            policy.apply(() -> call(Duration.ofMillis(500))).subscribe();
+        }
+
+        StepVerifier.create(policy.apply(() -> call(Duration.ZERO)))
+                .verifyError(BulkheadFullException.class);
+        assertEquals(MAX_CONCURRENT_CALLS, downstreamCalls.get());
+    }
+
+    @Test
+    public void rejectedCallsDoNotOpenTheCircuit() {
+
+        DownstreamPolicy policy = policy(Duration.ofSeconds(1), false, Duration.ofMillis(10));
+
+        for (int i = 0; i < MAX_CONCURRENT_CALLS; i++) {
+            policy.apply(() -> call(Duration.ofMillis(500))).subscribe();
+        }
+        // More rejections than the sliding window holds
+        for (int i = 0; i < SLIDING_WINDOW_SIZE; i++) {
+            StepVerifier.create(policy.apply(() -> call(Duration.ZERO)))
+                    .verifyError(BulkheadFullException.class);
+        }
+
+        assertEquals("CLOSED", policy.health(new Health.Builder().up()).getDetails().get("circuitBreakerState"));
+    }
+
+    private DownstreamPolicy policy(Duration timeout, boolean hedgeEnabled, Duration minHedgeDelay) {
+        CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
+                .slidingWindowSize(SLIDING_WINDOW_SIZE)
+                .minimumNumberOfCalls(SLIDING_WINDOW_SIZE)
+                .waitDurationInOpenState(Duration.ofSeconds(10))
+                .ignoreExceptions(NotFoundException.class, BulkheadFullException.class)
+                .build();
+        BulkheadConfig bulkheadConfig = BulkheadConfig.custom()
+                .maxConcurrentCalls(MAX_CONCURRENT_CALLS)
+                .maxWaitDuration(Duration.ZERO)
+                .build();
+        return new DownstreamPolicy("test", timeout, hedgeEnabled, 0.95, minHedgeDelay,
+                CircuitBreakerRegistry.of(circuitBreakerConfig), BulkheadRegistry.of(bulkheadConfig), meterRegistry);
+    }
+
+    private Mono<Integer> call(Duration latency) {
+        return Mono.fromCallable(downstreamCalls::incrementAndGet).delayElement(latency);
+    }
+}
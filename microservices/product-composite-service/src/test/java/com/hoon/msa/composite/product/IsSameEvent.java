@@ -37,6 +37,7 @@ public class IsSameEvent extends TypeSafeMatcher<String> {
         LOG.trace("Convert the following json string to a map: {}", eventAsJson);
         Map mapEvent = convertJsonStringToMap(eventAsJson);
         mapEvent.remove("eventCreatedAt");
+        mapEvent.remove("eventId");
 
         Map mapExpectedEvent = getMapWithoutCreatedAt(expectedEvent);
 
@@ -58,6 +59,8 @@ public class IsSameEvent extends TypeSafeMatcher<String> {
    	private Map getMapWithoutCreatedAt(Event event) {
         Map mapEvent = convertObjectToMap(event);
         mapEvent.remove("eventCreatedAt");
+        // Every event gets an id of its own
+        mapEvent.remove("eventId");
         return mapEvent;
     }
 
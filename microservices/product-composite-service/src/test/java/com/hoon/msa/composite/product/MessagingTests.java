@@ -8,18 +8,18 @@ import com.hoon.api.core.recommendation.Recommendation;
 import com.hoon.api.core.review.Review;
 import com.hoon.api.event.Event;
 import com.hoon.msa.composite.product.services.ProductCompositeIntegration;
-import org.junit.Before;
-import org.junit.Test;
-import org.junit.runner.RunWith;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.stream.test.binder.MessageCollector;
 import org.springframework.http.HttpStatus;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
-import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 
 import static com.hoon.api.event.Event.Type.CREATE;
@@ -34,9 +34,8 @@ import static org.springframework.cloud.stream.test.matcher.MessageQueueMatcher.
 import static org.springframework.http.HttpStatus.OK;
 import static reactor.core.publisher.Mono.just;
 
-@RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment=RANDOM_PORT)
-public class MessagingTests {
+class MessagingTests {
 
 	private static final int PRODUCT_ID_OK = 1;
 	private static final int PRODUCT_ID_NOT_FOUND = 2;
@@ -55,7 +54,7 @@ public class MessagingTests {
 	BlockingQueue<Message<?>> queueRecommendations = null;
 	BlockingQueue<Message<?>> queueReviews = null;
 
-	@Before
+	@BeforeEach
 	public void setUp() {
 		queueProducts = getQueue(channels.outputProducts());
 		queueRecommendations = getQueue(channels.outputRecommendations());
@@ -110,6 +109,25 @@ public class MessagingTests {
 		assertThat(queueReviews, receivesPayloadThat(sameEventExceptCreatedAt(expectedReviewEvent)));
 	}
 
+	@Test
+	public void createCompositeProductWithManyRecommendationsAndReviews() {
+
+		List<RecommendationSummary> recommendations = new ArrayList<>();
+		List<ReviewSummary> reviews = new ArrayList<>();
+		for (int i = 1; i <= 200; i++) {
+			recommendations.add(new RecommendationSummary(i, "a", 1, "c"));
+			reviews.add(new ReviewSummary(i, "a", "s", "c"));
+		}
+		ProductAggregate composite = new ProductAggregate(1, "name", 1, recommendations, reviews, null);
+
+		postAndVerifyProduct(composite, OK);
+
+		// All events are published before the request completes
+		assertEquals(1, queueProducts.size());
+		assertEquals(200, queueRecommendations.size());
+		assertEquals(200, queueReviews.size());
+	}
+
 	@Test
 	public void deleteCompositeProduct() {
 
@@ -135,7 +153,10 @@ public class MessagingTests {
 	}
 
 	private BlockingQueue<Message<?>> getQueue(MessageChannel messageChannel) {
-		return collector.forChannel(messageChannel);
+		BlockingQueue<Message<?>> queue = collector.forChannel(messageChannel);
+		// The queues are shared by the tests, start with empty ones
+		queue.clear();
+		return queue;
 	}
 
 	private void postAndVerifyProduct(ProductAggregate compositeProduct, HttpStatus expectedStatus) {
@@ -21,7 +21,17 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
 import static java.util.Collections.singletonList;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.OK;
@@ -35,6 +45,14 @@ class ProductCompositeServiceApplicationTests {
 	private static final int PRODUCT_ID_OK = 1;
 	private static final int PRODUCT_ID_NOT_FOUND = 13;
 	private static final int PRODUCT_ID_INVALID = 3;
+	private static final int PRODUCT_ID_CACHED = 4;
+	private static final int PRODUCT_ID_BATCH_1 = 5;
+	private static final int PRODUCT_ID_BATCH_2 = 6;
+	private static final int PRODUCT_ID_PARTIAL = 7;
+	private static final int PRODUCT_ID_SELECTIVE = 8;
+	private static final int PRODUCT_ID_STREAMED_1 = 9;
+	private static final int PRODUCT_ID_STREAMED_2 = 10;
+	private static final int PRODUCT_ID_PROJECTED = 11;
 
 	@Autowired
 	private WebTestClient client;
@@ -47,9 +65,9 @@ class ProductCompositeServiceApplicationTests {
 
 //		when(compositeIntegration.getProduct(PRODUCT_ID_OK)).
 //				thenReturn(new Product(PRODUCT_ID_OK, "name", 1, "mock-address"));
-//		when(compositeIntegration.getRecommendations(PRODUCT_ID_OK)).
+//		when(compositeIntegration.getRecommendations(PRODUCT_ID_OK, 0, 100)).
 //				thenReturn(singletonList(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address")));
-//		when(compositeIntegration.getReviews(PRODUCT_ID_OK)).
+//		when(compositeIntegration.getReviews(PRODUCT_ID_OK, 0, 100)).
 //				thenReturn(singletonList(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock address")));
 //
 //		when(compositeIntegration.getProduct(PRODUCT_ID_NOT_FOUND)).thenThrow(new NotFoundException("NOT FOUND: " + PRODUCT_ID_NOT_FOUND));
@@ -59,15 +77,74 @@ class ProductCompositeServiceApplicationTests {
 		when(compositeIntegration.getProduct(PRODUCT_ID_OK)).
 				thenReturn(Mono.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address")));
 
-		when(compositeIntegration.getRecommendations(PRODUCT_ID_OK)).
+		when(compositeIntegration.getRecommendations(PRODUCT_ID_OK, 0, 100, true)).
 				thenReturn(Flux.fromIterable(singletonList(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock address"))));
 
-		when(compositeIntegration.getReviews(PRODUCT_ID_OK)).
+		when(compositeIntegration.getReviews(PRODUCT_ID_OK, 0, 100, true)).
 				thenReturn(Flux.fromIterable(singletonList(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock address"))));
 
 		when(compositeIntegration.getProduct(PRODUCT_ID_NOT_FOUND)).thenThrow(new NotFoundException("NOT FOUND: " + PRODUCT_ID_NOT_FOUND));
 
 		when(compositeIntegration.getProduct(PRODUCT_ID_INVALID)).thenThrow(new InvalidInputException("INVALID: " + PRODUCT_ID_INVALID));
+
+		when(compositeIntegration.getProduct(PRODUCT_ID_CACHED)).
+				thenReturn(Mono.just(new Product(PRODUCT_ID_CACHED, "name", 1, "mock-address")));
+		when(compositeIntegration.getRecommendations(PRODUCT_ID_CACHED, 0, 100, true)).thenReturn(Flux.empty());
+		when(compositeIntegration.getReviews(PRODUCT_ID_CACHED, 0, 100, true)).thenReturn(Flux.empty());
+
+		List<Integer> batchIds = List.of(PRODUCT_ID_BATCH_1, PRODUCT_ID_BATCH_2);
+		when(compositeIntegration.getProducts(batchIds)).
+				thenReturn(Flux.just(
+						new Product(PRODUCT_ID_BATCH_2, "name", 1, "mock-address"),
+						new Product(PRODUCT_ID_BATCH_1, "name", 1, "mock-address")));
+		when(compositeIntegration.getRecommendationsForProducts(batchIds)).
+				thenReturn(Flux.just(
+						new Recommendation(PRODUCT_ID_BATCH_1, 1, "author", 1, "content", "mock address"),
+						new Recommendation(PRODUCT_ID_BATCH_1, 2, "author", 1, "content", "mock address")));
+		when(compositeIntegration.getReviewsForProducts(batchIds)).
+				thenReturn(Flux.just(new Review(PRODUCT_ID_BATCH_2, 1, "author", "subject", "content", "mock address")));
+
+		// The recommendations of the second product fail after its first one, once the first product is complete
+		List<Integer> streamedIds = List.of(PRODUCT_ID_STREAMED_1, PRODUCT_ID_STREAMED_2);
+		when(compositeIntegration.getProducts(streamedIds)).
+				thenReturn(Flux.just(
+						new Product(PRODUCT_ID_STREAMED_1, "name", 1, "mock-address"),
+						new Product(PRODUCT_ID_STREAMED_2, "name", 1, "mock-address")));
+		when(compositeIntegration.getRecommendationsForProducts(streamedIds)).
+				thenReturn(Flux.just(
+						new Recommendation(PRODUCT_ID_STREAMED_1, 1, "author", 1, "content", "mock address"),
+						new Recommendation(PRODUCT_ID_STREAMED_2, 1, "author", 1, "content", "mock address"))
+						.concatWith(Flux.<Recommendation>error(new TimeoutException()).delaySubscription(Duration.ofMillis(500))));
+		when(compositeIntegration.getReviewsForProducts(streamedIds)).thenReturn(Flux.empty());
+		List<Integer> uncachedIds = List.of(PRODUCT_ID_STREAMED_2);
+		when(compositeIntegration.getProducts(uncachedIds)).
+				thenReturn(Flux.just(new Product(PRODUCT_ID_STREAMED_2, "name", 1, "mock-address")));
+		when(compositeIntegration.getRecommendationsForProducts(uncachedIds)).thenReturn(Flux.empty());
+		when(compositeIntegration.getReviewsForProducts(uncachedIds)).thenReturn(Flux.empty());
+
+		when(compositeIntegration.getProduct(PRODUCT_ID_PARTIAL)).
+				thenReturn(just(new Product(PRODUCT_ID_PARTIAL, "name", 1, "mock-address")));
+		when(compositeIntegration.getRecommendations(PRODUCT_ID_PARTIAL, 0, 100, true)).thenReturn(Flux.empty());
+		when(compositeIntegration.getReviews(PRODUCT_ID_PARTIAL, 0, 100, true)).thenReturn(Flux.error(new TimeoutException()));
+
+		when(compositeIntegration.getProduct(PRODUCT_ID_SELECTIVE)).
+				thenReturn(just(new Product(PRODUCT_ID_SELECTIVE, "name", 1, "mock-address")));
+		when(compositeIntegration.getReviews(PRODUCT_ID_SELECTIVE, 0, 100, false)).
+				thenReturn(Flux.just(new Review(PRODUCT_ID_SELECTIVE, 1, "author", "subject", null, "mock address")));
+
+		when(compositeIntegration.getProduct(PRODUCT_ID_PROJECTED)).
+				thenReturn(just(new Product(PRODUCT_ID_PROJECTED, "name", 1, "mock-address")));
+		when(compositeIntegration.getRecommendations(PRODUCT_ID_PROJECTED, 0, 100, true)).
+				thenReturn(Flux.just(new Recommendation(PRODUCT_ID_PROJECTED, 1, "author", 1, "content", "mock address")));
+		when(compositeIntegration.getReviews(PRODUCT_ID_PROJECTED, 0, 100, true)).
+				thenReturn(Flux.just(new Review(PRODUCT_ID_PROJECTED, 1, "author", "subject", "content", "mock address")));
+
+		when(compositeIntegration.createProduct(any())).thenAnswer(invocation -> just(invocation.getArgument(0)));
+		when(compositeIntegration.createRecommendation(any())).thenAnswer(invocation -> just(invocation.getArgument(0)));
+		when(compositeIntegration.createReview(any())).thenAnswer(invocation -> just(invocation.getArgument(0)));
+		when(compositeIntegration.deleteProduct(anyInt())).thenReturn(Mono.empty());
+		when(compositeIntegration.deleteRecommendations(anyInt())).thenReturn(Mono.empty());
+		when(compositeIntegration.deleteReviews(anyInt())).thenReturn(Mono.empty());
 	}
 
 	@Test
@@ -133,6 +210,220 @@ class ProductCompositeServiceApplicationTests {
 				.jsonPath("$.reviews.length()").isEqualTo(1);
 	}
 
+	@Test
+	public void getProductByIdFromCache() {
+
+		getAndVerifyProduct(PRODUCT_ID_CACHED);
+		getAndVerifyProduct(PRODUCT_ID_CACHED);
+
+		// The second lookup must be served from the aggregate cache
+		verify(compositeIntegration, times(1)).getProduct(PRODUCT_ID_CACHED);
+
+		// A delete invalidates the cached aggregate
+		deleteAndVerifyProduct(PRODUCT_ID_CACHED, OK);
+		getAndVerifyProduct(PRODUCT_ID_CACHED);
+
+		verify(compositeIntegration, times(2)).getProduct(PRODUCT_ID_CACHED);
+	}
+
+	private void getAndVerifyProduct(int productId) {
+		getAndVerifyProduct(productId, "");
+	}
+
+	private void getAndVerifyProduct(int productId, String query) {
+		client.get()
+				.uri("/product-composite/" + productId + query)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.productId").isEqualTo(productId);
+	}
+
+	@Test
+	public void getProductByIdNotModified() {
+
+		String etag = client.get()
+				.uri("/product-composite/" + PRODUCT_ID_OK)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().exists("ETag")
+				.returnResult(String.class)
+				.getResponseHeaders().getETag();
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_OK)
+				.accept(APPLICATION_JSON)
+				.ifNoneMatch(etag)
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectBody().isEmpty();
+
+		// Partial aggregates get no ETag
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_PARTIAL)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().doesNotExist("ETag");
+	}
+
+	@Test
+	public void getProductByIdNextPageIsNotCached() {
+
+		when(compositeIntegration.getRecommendations(PRODUCT_ID_CACHED, 1, 10, true)).thenReturn(Flux.empty());
+		when(compositeIntegration.getReviews(PRODUCT_ID_CACHED, 1, 10, true)).thenReturn(Flux.empty());
+
+		getAndVerifyProduct(PRODUCT_ID_CACHED, "?afterRecommendationId=1&afterReviewId=1&limit=10");
+		getAndVerifyProduct(PRODUCT_ID_CACHED, "?afterRecommendationId=1&afterReviewId=1&limit=10");
+
+		verify(compositeIntegration, times(2)).getReviews(PRODUCT_ID_CACHED, 1, 10, true);
+	}
+
+	@Test
+	public void getProductByIdPartialIsNotCached() {
+
+		for (int i = 0; i < 2; i++) {
+			client.get()
+					.uri("/product-composite/" + PRODUCT_ID_PARTIAL)
+					.accept(APPLICATION_JSON)
+					.exchange()
+					.expectStatus().isOk()
+					.expectBody()
+					.jsonPath("$.productId").isEqualTo(PRODUCT_ID_PARTIAL)
+					.jsonPath("$.partial").isEqualTo(true)
+					.jsonPath("$.reviews.length()").isEqualTo(0);
+		}
+
+		verify(compositeIntegration, times(2)).getReviews(PRODUCT_ID_PARTIAL, 0, 100, true);
+	}
+
+	@Test
+	public void getProductByIdSelectiveInclude() {
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_SELECTIVE + "?include=reviews")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("name")
+				.jsonPath("$.partial").isEqualTo(false)
+				.jsonPath("$.recommendations").doesNotExist()
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.reviews[0].subject").isEqualTo("subject")
+				.jsonPath("$.reviews[0].content").doesNotExist();
+
+		// Only the included parts are requested from the core services
+		verify(compositeIntegration, never()).getRecommendations(anyInt(), anyInt(), anyInt(), anyBoolean());
+		verify(compositeIntegration, times(1)).getReviews(PRODUCT_ID_SELECTIVE, 0, 100, false);
+	}
+
+	@Test
+	public void getProductByIdCachedIsProjected() {
+
+		// Caches the complete aggregate
+		getAndVerifyProduct(PRODUCT_ID_PROJECTED);
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_PROJECTED + "?include=recommendations")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.recommendations.length()").isEqualTo(1)
+				.jsonPath("$.recommendations[0].author").isEqualTo("author")
+				.jsonPath("$.recommendations[0].content").doesNotExist()
+				.jsonPath("$.reviews").doesNotExist();
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_PROJECTED + "?include=reviews,content")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.recommendations").doesNotExist()
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.reviews[0].content").isEqualTo("content");
+
+		// Both projections are served from the cached aggregate
+		verify(compositeIntegration, times(1)).getProduct(PRODUCT_ID_PROJECTED);
+		verify(compositeIntegration, never()).getReviews(PRODUCT_ID_PROJECTED, 0, 100, false);
+	}
+
+	@Test
+	public void getProductByIdInvalidInclude() {
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_OK + "?include=reviews,ratings")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(UNPROCESSABLE_ENTITY)
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("Invalid include: ratings");
+	}
+
+	@Test
+	public void getProductByIdInvalidLimit() {
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_OK + "?limit=0")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(UNPROCESSABLE_ENTITY)
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("Invalid limit: 0");
+	}
+
+	@Test
+	public void getProductsByIds() {
+
+		client.get()
+				.uri("/product-composite?productIds=" + PRODUCT_ID_BATCH_1 + "," + PRODUCT_ID_BATCH_2 + "," + PRODUCT_ID_BATCH_1)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].productId").isEqualTo(PRODUCT_ID_BATCH_1)
+				.jsonPath("$[0].recommendations.length()").isEqualTo(2)
+				.jsonPath("$[0].reviews.length()").isEqualTo(0)
+				.jsonPath("$[1].productId").isEqualTo(PRODUCT_ID_BATCH_2)
+				.jsonPath("$[1].recommendations.length()").isEqualTo(0)
+				.jsonPath("$[1].reviews.length()").isEqualTo(1);
+
+		// One bulk call per core service for the whole batch
+		verify(compositeIntegration, times(1)).getProducts(List.of(PRODUCT_ID_BATCH_1, PRODUCT_ID_BATCH_2));
+	}
+
+	@Test
+	public void getProductsByIdsAfterAFailedPart() {
+
+		client.get()
+				.uri("/product-composite?productIds=" + PRODUCT_ID_STREAMED_1 + "," + PRODUCT_ID_STREAMED_2)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].productId").isEqualTo(PRODUCT_ID_STREAMED_1)
+				.jsonPath("$[0].partial").isEqualTo(false)
+				.jsonPath("$[0].recommendations.length()").isEqualTo(1)
+				.jsonPath("$[1].productId").isEqualTo(PRODUCT_ID_STREAMED_2)
+				.jsonPath("$[1].partial").isEqualTo(true)
+				.jsonPath("$[1].recommendations.length()").isEqualTo(1);
+
+		// Only the complete aggregate is cached, the partial one is fetched again
+		client.get()
+				.uri("/product-composite?productIds=" + PRODUCT_ID_STREAMED_1 + "," + PRODUCT_ID_STREAMED_2)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk();
+		verify(compositeIntegration, times(1)).getProducts(List.of(PRODUCT_ID_STREAMED_1, PRODUCT_ID_STREAMED_2));
+		verify(compositeIntegration, times(1)).getProducts(List.of(PRODUCT_ID_STREAMED_2));
+	}
+
 	@Test
 	public void getProductNotFound() {
 
@@ -0,0 +1,90 @@
+package com.hoon.msa.composite.product;
+
+import com.hoon.api.core.product.Product;
+import com.hoon.msa.composite.product.services.ProductCompositeIntegration;
+import com.hoon.util.exceptions.EventProcessingException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.test.binder.MessageCollector;
+import org.springframework.messaging.Message;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Publishing with publisher confirms, the tests confirm the messages collected from the test binder
+ */
+@SpringBootTest(properties = {
+		"app.product-composite.publisher-confirms.enabled: true",
+		"app.product-composite.publisher-confirms.timeout: 500ms"})
+class PublisherConfirmsTests {
+
+	@Autowired
+	private ProductCompositeIntegration integration;
+
+	@Autowired
+	private ProductCompositeIntegration.MessageSources channels;
+
+	@Autowired
+	private MessageCollector collector;
+
+	private BlockingQueue<Message<?>> queueProducts = null;
+
+	@BeforeEach
+	public void setUp() {
+		queueProducts = collector.forChannel(channels.outputProducts());
+		queueProducts.clear();
+	}
+
+	@Test
+	public void confirmedEventCompletesTheCreate() {
+
+		StepVerifier.create(integration.createProduct(new Product(1, "name", 1, null)))
+				.then(() -> confirm(true, null))
+				.expectNextCount(1)
+				.verifyComplete();
+	}
+
+	@Test
+	public void nackedEventFailsTheCreate() {
+
+		StepVerifier.create(integration.createProduct(new Product(1, "name", 1, null)))
+				.then(() -> confirm(false, "queue full"))
+				.expectErrorMatches(ex -> ex instanceof EventProcessingException && ex.getMessage().endsWith("queue full"))
+				.verify();
+	}
+
+	@Test
+	public void unconfirmedEventTimesOut() {
+
+		// The message is sent, but never confirmed
+		StepVerifier.create(integration.deleteProduct(1))
+				.expectError(TimeoutException.class)
+				.verify();
+
+		assertEquals(1, queueProducts.size());
+	}
+
+	private void confirm(boolean ack, String reason) {
+		Message<?> message;
+		try {
+			message = queueProducts.poll(5, TimeUnit.SECONDS);
+		} catch (InterruptedException ie) {
+			throw new IllegalStateException(ie);
+		}
+		assertNotNull(message);
+
+		CorrelationData correlation = message.getHeaders().get(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION, CorrelationData.class);
+		assertNotNull(correlation);
+		correlation.getFuture().set(new CorrelationData.Confirm(ack, reason));
+	}
+}
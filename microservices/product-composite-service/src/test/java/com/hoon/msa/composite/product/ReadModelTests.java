@@ -0,0 +1,265 @@
+package com.hoon.msa.composite.product;
+
+import com.hoon.api.core.product.Product;
+import com.hoon.api.core.recommendation.Recommendation;
+import com.hoon.api.core.review.Review;
+import com.hoon.api.event.Event;
+import com.hoon.msa.composite.product.services.ProductCompositeIntegration;
+import com.hoon.msa.composite.product.services.ProductReadModel;
+import com.hoon.msa.composite.product.services.ReadModelMessageProcessor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static com.hoon.api.event.Event.Type.CREATE;
+import static com.hoon.api.event.Event.Type.DELETE;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT)
+@ActiveProfiles("read-model")
+class ReadModelTests {
+	private static final int PRODUCT_ID_EVENTS = 1;
+	private static final int PRODUCT_ID_DELETED = 2;
+	private static final int PRODUCT_ID_REBUILT = 3;
+	private static final int PRODUCT_ID_DUPLICATE = 5;
+	private static final int PRODUCT_ID_PROJECTED = 6;
+	private static final int PRODUCT_ID_RECREATED = 7;
+	private static final int PRODUCT_ID_ORPHAN = 8;
+
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private ReadModelMessageProcessor.ReadModelSinks channels;
+
+	@Autowired
+	private ProductReadModel readModel;
+
+	@MockBean
+	private ProductCompositeIntegration compositeIntegration;
+
+	@Test
+	public void getCompositeProductFromEvents() {
+
+		sendEvent(channels.inputProducts(), new Event(CREATE, PRODUCT_ID_EVENTS, new Product(PRODUCT_ID_EVENTS, "name", 1, null)));
+		for (int id = 1; id <= 3; id++) {
+			sendEvent(channels.inputRecommendations(), new Event(CREATE, PRODUCT_ID_EVENTS, new Recommendation(PRODUCT_ID_EVENTS, id, "a", 1, "c", null)));
+			sendEvent(channels.inputReviews(), new Event(CREATE, PRODUCT_ID_EVENTS, new Review(PRODUCT_ID_EVENTS, id, "a", "s", "c", null)));
+		}
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_EVENTS + "?afterRecommendationId=1&afterReviewId=2&limit=1")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_EVENTS)
+				.jsonPath("$.partial").isEqualTo(false)
+				.jsonPath("$.recommendations.length()").isEqualTo(1)
+				.jsonPath("$.recommendations[0].recommendationId").isEqualTo(2)
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.reviews[0].reviewId").isEqualTo(3);
+
+		// Served without calls to the core services
+		verify(compositeIntegration, never()).getProduct(anyInt());
+		verify(compositeIntegration, never()).getRecommendations(anyInt(), anyInt(), anyInt(), anyBoolean());
+		verify(compositeIntegration, never()).getReviews(anyInt(), anyInt(), anyInt(), anyBoolean());
+	}
+
+	@Test
+	public void getCompositeProductFromEventsIsProjected() {
+
+		sendEvent(channels.inputProducts(), new Event(CREATE, PRODUCT_ID_PROJECTED, new Product(PRODUCT_ID_PROJECTED, "name", 1, null)));
+		sendEvent(channels.inputRecommendations(), new Event(CREATE, PRODUCT_ID_PROJECTED, new Recommendation(PRODUCT_ID_PROJECTED, 1, "a", 1, "c", null)));
+		sendEvent(channels.inputReviews(), new Event(CREATE, PRODUCT_ID_PROJECTED, new Review(PRODUCT_ID_PROJECTED, 1, "a", "s", "c", null)));
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_PROJECTED + "?include=reviews")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("name")
+				.jsonPath("$.recommendations").doesNotExist()
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.reviews[0].subject").isEqualTo("s")
+				.jsonPath("$.reviews[0].content").doesNotExist();
+
+		verify(compositeIntegration, never()).getProduct(PRODUCT_ID_PROJECTED);
+		verify(compositeIntegration, never()).getReviews(anyInt(), anyInt(), anyInt(), anyBoolean());
+	}
+
+	@Test
+	public void deletedProductIsReadFromTheCoreServices() {
+
+		sendEvent(channels.inputProducts(), new Event(CREATE, PRODUCT_ID_DELETED, new Product(PRODUCT_ID_DELETED, "name", 1, null)));
+		sendEvent(channels.inputProducts(), new Event(DELETE, PRODUCT_ID_DELETED, null));
+
+		when(compositeIntegration.getProduct(PRODUCT_ID_DELETED)).thenReturn(Mono.just(new Product(PRODUCT_ID_DELETED, "core", 1, "mock-address")));
+		when(compositeIntegration.getRecommendations(PRODUCT_ID_DELETED, 0, 100, true)).thenReturn(Flux.empty());
+		when(compositeIntegration.getReviews(PRODUCT_ID_DELETED, 0, 100, true)).thenReturn(Flux.empty());
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_DELETED)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("core");
+
+		verify(compositeIntegration).getProduct(PRODUCT_ID_DELETED);
+	}
+
+	@Test
+	public void rebuildFromTheCoreServices() {
+
+		// The batch call returns the first 100 recommendations, the rest is read with the paged call
+		List<Integer> productIds = List.of(PRODUCT_ID_REBUILT, PRODUCT_ID_REBUILT + 1);
+		when(compositeIntegration.getProducts(productIds)).thenReturn(Flux.just(new Product(PRODUCT_ID_REBUILT, "rebuilt", 1, "mock-address")));
+		when(compositeIntegration.getRecommendationsForProducts(productIds)).thenReturn(recommendations(PRODUCT_ID_REBUILT, 1, 100));
+		when(compositeIntegration.getRecommendations(PRODUCT_ID_REBUILT, 100, 1000, true)).thenReturn(recommendations(PRODUCT_ID_REBUILT, 101, 150));
+		when(compositeIntegration.getReviewsForProducts(productIds)).thenReturn(Flux.just(new Review(PRODUCT_ID_REBUILT, 1, "a", "s", "c", "mock-address")));
+
+		client.post()
+				.uri("/actuator/readmodel")
+				.contentType(APPLICATION_JSON)
+				.bodyValue("{\"fromProductId\": " + PRODUCT_ID_REBUILT + ", \"toProductId\": " + (PRODUCT_ID_REBUILT + 1) + "}")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.loaded").isEqualTo(1);
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_REBUILT + "?afterRecommendationId=100")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("rebuilt")
+				.jsonPath("$.recommendations.length()").isEqualTo(50)
+				.jsonPath("$.recommendations[49].recommendationId").isEqualTo(150)
+				.jsonPath("$.reviews.length()").isEqualTo(1);
+
+		verify(compositeIntegration, never()).getProduct(PRODUCT_ID_REBUILT);
+		verify(compositeIntegration, never()).getReviews(anyInt(), anyInt(), anyInt(), anyBoolean());
+	}
+
+	@Test
+	public void createsPublishedBeforeTheDeleteAreDropped() {
+
+		sendEvent(channels.inputProducts(), new Event(CREATE, PRODUCT_ID_RECREATED, new Product(PRODUCT_ID_RECREATED, "first", 1, null)));
+		Event lateReview = new Event(CREATE, PRODUCT_ID_RECREATED, new Review(PRODUCT_ID_RECREATED, 1, "a", "s", "c", null));
+		sendEvent(channels.inputProducts(), new Event(DELETE, PRODUCT_ID_RECREATED, null));
+
+		// Consumed after the delete, the review of the deleted product must not show up in the created product
+		sendEvent(channels.inputReviews(), lateReview);
+		sendEvent(channels.inputProducts(), new Event(CREATE, PRODUCT_ID_RECREATED, new Product(PRODUCT_ID_RECREATED, "second", 1, null)));
+		sendEvent(channels.inputReviews(), new Event(CREATE, PRODUCT_ID_RECREATED, new Review(PRODUCT_ID_RECREATED, 2, "a", "s", "c", null)));
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_RECREATED)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("second")
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.reviews[0].reviewId").isEqualTo(2);
+
+		verify(compositeIntegration, never()).getProduct(PRODUCT_ID_RECREATED);
+	}
+
+	@Test
+	public void rowsWithoutAProductAreRemoved() {
+
+		sendEvent(channels.inputReviews(), new Event(CREATE, PRODUCT_ID_ORPHAN, new Review(PRODUCT_ID_ORPHAN, 1, "a", "s", "c", null)));
+
+		assertTrue(readModel.removeOrphans(Duration.ZERO) >= 1);
+
+		sendEvent(channels.inputProducts(), new Event(CREATE, PRODUCT_ID_ORPHAN, new Product(PRODUCT_ID_ORPHAN, "name", 1, null)));
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_ORPHAN)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.reviews.length()").isEqualTo(0);
+	}
+
+	@Test
+	public void invalidAndDuplicateCreatesAreIgnored() {
+
+		sendEvent(channels.inputProducts(), new Event(CREATE, PRODUCT_ID_DUPLICATE, new Product(PRODUCT_ID_DUPLICATE, "first", 1, null)));
+		sendEvent(channels.inputProducts(), new Event(CREATE, PRODUCT_ID_DUPLICATE, new Product(PRODUCT_ID_DUPLICATE, "second", 1, null)));
+		sendEvent(channels.inputProducts(), new Event(CREATE, 0, new Product(0, "invalid", 1, null)));
+		sendEvent(channels.inputRecommendations(), new Event(CREATE, PRODUCT_ID_DUPLICATE, new Recommendation(PRODUCT_ID_DUPLICATE, 1, "first", 1, "c", null)));
+		sendEvent(channels.inputRecommendations(), new Event(CREATE, PRODUCT_ID_DUPLICATE, new Recommendation(PRODUCT_ID_DUPLICATE, 1, "second", 1, "c", null)));
+		sendEvent(channels.inputReviews(), new Event(CREATE, PRODUCT_ID_DUPLICATE, new Review(PRODUCT_ID_DUPLICATE, 1, "first", "s", "c", null)));
+		sendEvent(channels.inputReviews(), new Event(CREATE, PRODUCT_ID_DUPLICATE, new Review(PRODUCT_ID_DUPLICATE, 1, "second", "s", "c", null)));
+
+		// The first created entities are kept, as in the core services
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_DUPLICATE)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("first")
+				.jsonPath("$.recommendations.length()").isEqualTo(1)
+				.jsonPath("$.recommendations[0].author").isEqualTo("first")
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.reviews[0].author").isEqualTo("first");
+
+		verify(compositeIntegration, never()).getProduct(PRODUCT_ID_DUPLICATE);
+	}
+
+	@Test
+	public void stalenessGrowsWithoutEvents() throws InterruptedException {
+
+		Duration staleness = readModel.staleness();
+		Thread.sleep(20);
+
+		assertTrue(readModel.staleness().compareTo(staleness) > 0);
+	}
+
+	@Test
+	public void invalidRebuildRangeIsRejected() {
+
+		client.post()
+				.uri("/actuator/readmodel")
+				.contentType(APPLICATION_JSON)
+				.bodyValue("{\"fromProductId\": 0, \"toProductId\": 10}")
+				.exchange()
+				.expectStatus().isBadRequest();
+
+		verify(compositeIntegration, never()).getProducts(anyList());
+	}
+
+	private Flux<Recommendation> recommendations(int productId, int fromId, int toId) {
+		return Flux.range(fromId, toId - fromId + 1)
+				.map(id -> new Recommendation(productId, id, "a", 1, "c", "mock-address"));
+	}
+
+	private void sendEvent(MessageChannel channel, Event<Integer, ?> event) {
+		channel.send(new GenericMessage<>(event));
+	}
+}
@@ -0,0 +1,51 @@
+package com.hoon.msa.composite.product;
+
+import com.hoon.msa.composite.product.services.RequestCoalescer;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RequestCoalescerTests {
+
+    private final RequestCoalescer<Integer, Integer> coalescer = new RequestCoalescer<>();
+    private final AtomicInteger downstreamCalls = new AtomicInteger();
+
+    @Test
+    public void concurrentRequestsShareOneCall() {
+
+        StepVerifier.create(Mono.zip(request(1), request(1), request(1)))
+                .expectNextMatches(t -> t.getT1() == 1 && t.getT2() == 1 && t.getT3() == 1)
+                .verifyComplete();
+
+        assertEquals(1, downstreamCalls.get());
+    }
+
+    @Test
+    public void completedRequestsAreNotReused() {
+
+        StepVerifier.create(request(1)).expectNext(1).verifyComplete();
+        StepVerifier.create(request(1)).expectNext(2).verifyComplete();
+
+        assertEquals(2, downstreamCalls.get());
+    }
+
+    @Test
+    public void differentKeysAreNotCoalesced() {
+
+        StepVerifier.create(Mono.zip(request(1), request(2)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertEquals(2, downstreamCalls.get());
+    }
+
+    private Mono<Integer> request(int key) {
+        return coalescer.coalesce(key, () -> Mono.fromCallable(downstreamCalls::incrementAndGet)
+                .delayElement(Duration.ofMillis(100)));
+    }
+}
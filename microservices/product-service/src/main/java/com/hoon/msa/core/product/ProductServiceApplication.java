@@ -1,15 +1,18 @@
 package com.hoon.msa.core.product;
 
+import com.hoon.util.messaging.EventDeduplicator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Import;
 import org.springframework.stereotype.Component;
 
 @Slf4j
 @SpringBootApplication
 @ComponentScan("com.hoon")
+@Import(EventDeduplicator.class)
 public class ProductServiceApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,40 @@
+package com.hoon.msa.core.product.services;
+
+import com.hoon.api.core.product.Product;
+import com.hoon.msa.core.product.persistence.ProductEntity;
+import com.hoon.util.batch.MongoBatchWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Inserts a batch of products with a single unordered insertMany, see MongoBatchWriter.
+ */
+@Component
+public class ProductBatchWriter extends MongoBatchWriter<Product, ProductEntity> {
+
+    private final ProductMapper mapper;
+
+    @Autowired
+    public ProductBatchWriter(ReactiveMongoTemplate mongoTemplate, ProductMapper mapper) {
+        super(mongoTemplate, ProductEntity.class);
+        this.mapper = mapper;
+    }
+
+    @Override
+    protected int productId(Product product) {
+        return product.getProductId();
+    }
+
+    @Override
+    protected ProductEntity toEntity(Product product) {
+        ProductEntity entity = mapper.apiToEntity(product);
+        entity.setVersion(0);
+        return entity;
+    }
+
+    @Override
+    protected String key(Product product) {
+        return "Product Id: " + product.getProductId();
+    }
+}
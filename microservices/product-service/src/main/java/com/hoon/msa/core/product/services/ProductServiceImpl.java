@@ -6,26 +6,43 @@ import com.hoon.msa.core.product.persistence.ProductEntity;
 import com.hoon.msa.core.product.persistence.ProductRepository;
 import com.hoon.util.exceptions.InvalidInputException;
 import com.hoon.util.exceptions.NotFoundException;
+import com.hoon.util.http.ConditionalGetFilter;
+import com.hoon.util.http.ETag;
 import com.hoon.util.http.ServiceUtil;
+import com.hoon.util.messaging.CreateIfAbsent;
+import com.hoon.util.reactor.StageMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Slf4j
 @RestController
-public class ProductServiceImpl implements ProductService {
+public class ProductServiceImpl implements ProductService, CreateIfAbsent<Product> {
+    private static final int MAX_BATCH_SIZE = 100;
 
     private final ServiceUtil serviceUtil;
     private final ProductRepository repository;
     private final ProductMapper mapper;
+    private final StageMetrics stageMetrics;
+    private final ReactiveMongoTemplate mongoTemplate;
 
     @Autowired
-    public ProductServiceImpl(ProductRepository repository, ProductMapper mapper, ServiceUtil serviceUtil) {
+    public ProductServiceImpl(ProductRepository repository, ProductMapper mapper, ServiceUtil serviceUtil, StageMetrics stageMetrics, ReactiveMongoTemplate mongoTemplate) {
         this.repository = repository;
         this.mapper = mapper;
         this.serviceUtil = serviceUtil;
+        this.stageMetrics = stageMetrics;
+        this.mongoTemplate = mongoTemplate;
     }
 
     @Override
@@ -45,7 +62,9 @@ public class ProductServiceImpl implements ProductService {
 
         return repository.findByProductId(productId)
                 .switchIfEmpty(Mono.error(new NotFoundException("No product found for productId: " + productId)))
-                .log()
+                .transform(stageMetrics.mono("product.get"))
+                // Answers 304 Not Modified if the client has the current version
+                .flatMap(entity -> ConditionalGetFilter.ifModified(etag(entity), Mono.just(entity)))
                 .map(entity -> mapper.entityToApi(entity))
                 .map(product -> {
                     product.setServiceAddress(serviceUtil.getServiceAddress());
@@ -53,20 +72,39 @@ public class ProductServiceImpl implements ProductService {
                 });
     }
 
+    private static String etag(ProductEntity entity) {
+        return new ETag().add(entity.getProductId()).add(entity.getVersion()).toString();
+    }
+
     @Override
-    public Product createProduct(Product body) {
+    public Flux<Product> getProducts(List<Integer> productIds) {
+        log.debug("/product/batch return the found products for productIds={}", productIds);
+
+        if (productIds.isEmpty() || productIds.size() > MAX_BATCH_SIZE) throw new InvalidInputException("Invalid number of productIds: " + productIds.size());
+        productIds.stream().filter(productId -> productId < 1).findFirst().ifPresent(productId -> {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        });
+
+        return repository.findByProductIdIn(productIds)
+                .map(entity -> mapper.entityToApi(entity))
+                .map(product -> {
+                    product.setServiceAddress(serviceUtil.getServiceAddress());
+                    return product;
+                });
+    }
+
+    @Override
+    public Mono<Product> createProduct(Product body) {
         if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
 
         ProductEntity entity = mapper.apiToEntity(body);
-        Mono<Product> newEntity = repository.save(entity)
-                .log()
+        return repository.save(entity)
+                .transform(stageMetrics.mono("product.create"))
                 .onErrorMap(
                         DuplicateKeyException.class,
                         ex -> new InvalidInputException("Duplicate key, Product Id: " + body.getProductId()))
                 .map(e -> mapper.entityToApi(e));
 
-        return newEntity.block();
-
 //        try {
 //            ProductEntity entity = mapper.apiToEntity(body);
 //            ProductEntity newEntity = repository.save(entity);
@@ -76,12 +114,39 @@ public class ProductServiceImpl implements ProductService {
 //        }
     }
 
+    /**
+     * One upsert on productId that only sets the fields when it inserts, an existing product is left as is.
+     */
     @Override
-    public void deleteProduct(int productId) {
+    public Mono<Boolean> createIfAbsent(Product body) {
+        if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
+
+        ProductEntity entity = mapper.apiToEntity(body);
+        entity.setVersion(0);
+        Document document = new Document();
+        mongoTemplate.getConverter().write(entity, document);
+
+        // The key fields are taken from the query
+        document.remove("_id");
+        document.remove("productId");
+        Update update = new Update();
+        document.forEach(update::setOnInsert);
+
+        return mongoTemplate.upsert(new Query(Criteria.where("productId").is(body.getProductId())), update, ProductEntity.class)
+                .map(result -> result.getUpsertedId() != null)
+                // Of two concurrent upserts of the same key both may try to insert, the loser fails on the unique index
+                .onErrorReturn(DuplicateKeyException.class, false)
+                .transform(stageMetrics.mono("product.create-if-absent"));
+    }
+
+    @Override
+    public Mono<Void> deleteProduct(int productId) {
 //        repository.findByProductId(productId).ifPresent(e -> repository.delete(e));
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
 
         log.debug("deleteProduct: tries to delete an entity with productId: {}", productId);
-        repository.findByProductId(productId).log().map(e -> repository.delete(e)).flatMap(e -> e).block();
+        return repository.findByProductId(productId)
+                .flatMap(e -> repository.delete(e))
+                .transform(stageMetrics.mono("product.delete"));
     }
 }
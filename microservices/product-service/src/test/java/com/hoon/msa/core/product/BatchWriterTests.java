@@ -0,0 +1,60 @@
+package com.hoon.msa.core.product;
+
+import com.hoon.api.core.product.Product;
+import com.hoon.msa.core.product.persistence.ProductRepository;
+import com.hoon.msa.core.product.services.ProductBatchWriter;
+import com.hoon.util.exceptions.InvalidInputException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SpringBootTest(properties = {"spring.data.mongodb.port: 0"})
+class BatchWriterTests {
+	@Autowired
+	private ProductBatchWriter writer;
+	@Autowired
+	private ProductRepository repository;
+
+	@BeforeEach
+	public void setupDb() {
+		repository.deleteAll().block();
+	}
+
+	@Test
+	public void batchIsInserted() {
+
+		List<RuntimeException> failures = writer.write(List.of(product(1), product(2), product(3)));
+
+		assertEquals(3, failures.size());
+		failures.forEach(failure -> assertNull(failure));
+		assertEquals(3, (long)repository.count().block());
+	}
+
+	@Test
+	public void failingProductsOnlyFailThemselves() {
+
+		writer.write(List.of(product(1)));
+
+		// A duplicate and an invalid product in the middle of the batch
+		List<RuntimeException> failures = writer.write(List.of(product(2), product(1), product(0), product(3)));
+
+		assertNull(failures.get(0));
+		assertTrue(failures.get(1) instanceof InvalidInputException);
+		assertEquals("Duplicate key, Product Id: 1", failures.get(1).getMessage());
+		assertTrue(failures.get(2) instanceof InvalidInputException);
+		assertEquals("Invalid productId: 0", failures.get(2).getMessage());
+		assertNull(failures.get(3));
+		assertEquals(3, (long)repository.count().block());
+	}
+
+	private Product product(int productId) {
+		return new Product(productId, "Name " + productId, productId, "SA");
+	}
+}
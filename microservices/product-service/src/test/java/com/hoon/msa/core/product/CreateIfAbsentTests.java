@@ -0,0 +1,85 @@
+package com.hoon.msa.core.product;
+
+import com.hoon.api.core.product.Product;
+import com.hoon.api.event.Event;
+import com.hoon.msa.core.product.persistence.ProductRepository;
+import com.hoon.util.messaging.CreateIfAbsent;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.integration.channel.AbstractMessageChannel;
+import org.springframework.messaging.support.GenericMessage;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+import static com.hoon.api.event.Event.Type.CREATE;
+import static org.junit.Assert.assertEquals;
+
+@SpringBootTest(properties = {"spring.data.mongodb.port: 0", "app.bindings.input.create-mode: insert-if-absent"})
+class CreateIfAbsentTests {
+	@Autowired
+	private ProductRepository repository;
+	@Autowired
+	private Sink channels;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private CreateIfAbsent<Product> creator;
+	private AbstractMessageChannel input = null;
+
+	@BeforeEach
+	public void setupDb() {
+		input = (AbstractMessageChannel) channels.input();
+		repository.deleteAll().block();
+	}
+
+	@Test
+	public void replayedCreateEventSucceeds() {
+
+		int productId = 1;
+		double created = createCount("created");
+		double existing = createCount("existing");
+
+		// Two events, so the second one is not skipped as a redelivery
+		sendCreateProductEvent(productId, "Name");
+		sendCreateProductEvent(productId, "Other name");
+
+		// The existing product is left as is and the event does not fail
+		assertEquals(1, (long)repository.count().block());
+		assertEquals("Name", repository.findByProductId(productId).block().getName());
+		assertEquals(created + 1, createCount("created"), 0);
+		assertEquals(existing + 1, createCount("existing"), 0);
+	}
+
+	@Test
+	public void concurrentCreatesInsertOnce() {
+
+		int productId = 2;
+
+		// Concurrent upserts of the same key may both try to insert, the loser must not fail
+		List<Boolean> results = Flux.range(0, 8)
+				.flatMap(i -> creator.createIfAbsent(new Product(productId, "Name " + i, i, "SA")).subscribeOn(Schedulers.parallel()))
+				.collectList()
+				.block();
+
+		assertEquals(8, results.size());
+		assertEquals(1, results.stream().filter(created -> created).count());
+		assertEquals(1, (long)repository.count().block());
+	}
+
+	private double createCount(String result) {
+		return meterRegistry.find("messages.create").tag("result", result).counters().stream()
+				.mapToDouble(counter -> counter.count())
+				.sum();
+	}
+
+	private void sendCreateProductEvent(int productId, String name) {
+		Event<Integer, Product> event = new Event(CREATE, productId, new Product(productId, name, productId, "SA"));
+		input.send(new GenericMessage<>(event));
+	}
+}
@@ -1,9 +1,12 @@
 package com.hoon.msa.core.product;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.hoon.api.core.product.Product;
 import com.hoon.api.event.Event;
 import com.hoon.msa.core.product.persistence.ProductRepository;
 import com.hoon.util.exceptions.InvalidInputException;
+import com.hoon.util.messaging.CreateIfAbsent;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
@@ -12,12 +15,16 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.stream.messaging.Sink;
 import org.springframework.http.HttpStatus;
 import org.springframework.integration.channel.AbstractMessageChannel;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.support.GenericMessage;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
 import static com.hoon.api.event.Event.Type.CREATE;
 import static com.hoon.api.event.Event.Type.DELETE;
+import static com.hoon.util.messaging.EventMessageConverters.APPLICATION_CBOR;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.*;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
@@ -36,6 +43,10 @@ class ProductServiceApplicationTests {
 	private ProductRepository repository;
 	@Autowired
 	private Sink channels;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private CreateIfAbsent<Product> creator;
 	private AbstractMessageChannel input = null;
 
 	@BeforeEach
@@ -68,6 +79,47 @@ class ProductServiceApplicationTests {
 				.jsonPath("$.productId").isEqualTo(productId);
 	}
 
+	@Test
+	public void getProductNotModified() {
+
+		int productId = 1;
+		sendCreateProductEvent(productId);
+
+		String etag = client.get()
+				.uri("/product/" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().exists("ETag")
+				.returnResult(String.class)
+				.getResponseHeaders().getETag();
+
+		client.get()
+				.uri("/product/" + productId)
+				.accept(APPLICATION_JSON)
+				.ifNoneMatch(etag)
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectBody().isEmpty();
+	}
+
+	@Test
+	public void getProductsByIds() {
+
+		sendCreateProductEvent(1);
+		sendCreateProductEvent(2);
+		sendCreateProductEvent(3);
+
+		client.get()
+				.uri("/product/batch?productIds=1,3,13")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2);
+	}
+
 	@Test
 	public void duplicateError() {
 
@@ -102,6 +154,34 @@ class ProductServiceApplicationTests {
 //		}
 	}
 
+	@Test
+	public void redeliveredEventIsSkipped() {
+
+		int productId = 1;
+		Event<Integer, Product> event = new Event(CREATE, productId, new Product(productId, "Name " + productId, productId, "SA"));
+		double duplicates = meterRegistry.get("messages.deduplicated").counter().count();
+
+		// Without the deduplication the second delivery fails on the unique index
+		input.send(new GenericMessage<>(event));
+		input.send(new GenericMessage<>(event));
+
+		assertEquals(1, (long)repository.count().block());
+		assertEquals(duplicates + 1, meterRegistry.get("messages.deduplicated").counter().count(), 0);
+	}
+
+	@Test
+	public void createIfAbsent() {
+
+		int productId = 1;
+
+		assertTrue(creator.createIfAbsent(new Product(productId, "Name", 1, "SA")).block());
+		assertFalse(creator.createIfAbsent(new Product(productId, "Other name", 2, "SA")).block());
+
+		// The existing product is left as is
+		assertEquals(1, (long)repository.count().block());
+		assertEquals("Name", repository.findByProductId(productId).block().getName());
+	}
+
 	@Test
 	public void deleteProduct() {
 
@@ -186,6 +266,19 @@ class ProductServiceApplicationTests {
 				.expectBody();
 	}
 
+	@Test
+	public void createProductFromCborEvent() throws JsonProcessingException {
+
+		int productId = 1;
+		Product product = new Product(productId, "Name " + productId, productId, "SA");
+		byte[] payload = Jackson2ObjectMapperBuilder.cbor().build().writeValueAsBytes(new Event(CREATE, productId, product));
+
+		// Decoded by the CBOR converter according to the content type header
+		input.send(MessageBuilder.withPayload(payload).setHeader(MessageHeaders.CONTENT_TYPE, APPLICATION_CBOR).build());
+
+		assertNotNull(repository.findByProductId(productId).block());
+	}
+
 //	@Test
 //	void contextLoads() {
 //	}
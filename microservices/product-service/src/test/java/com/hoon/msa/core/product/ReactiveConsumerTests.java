@@ -0,0 +1,96 @@
+package com.hoon.msa.core.product;
+
+import com.hoon.api.core.product.Product;
+import com.hoon.api.event.Event;
+import com.hoon.msa.core.product.persistence.ProductRepository;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.integration.channel.AbstractMessageChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.io.IOException;
+
+import static com.hoon.api.event.Event.Type.CREATE;
+import static com.hoon.api.event.Event.Type.DELETE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * The reactive consumer with manual acks, the channel of the RabbitMQ binder is a mock
+ */
+@SpringBootTest(properties = {
+		"spring.data.mongodb.port: 0",
+		"app.reactive-consumer.enabled: true",
+		"spring.cloud.stream.bindings.input.consumer.backOffInitialInterval: 10",
+		"spring.cloud.stream.bindings.input.consumer.backOffMaxInterval: 10"})
+class ReactiveConsumerTests {
+	@Autowired
+	private ProductRepository repository;
+	@Autowired
+	private Sink channels;
+	private AbstractMessageChannel input = null;
+	private final Channel channel = mock(Channel.class);
+
+	@BeforeEach
+	public void setupDb() {
+		input = (AbstractMessageChannel) channels.input();
+		repository.deleteAll().block();
+	}
+
+	@Test
+	public void eventsOfAProductAreProcessedInOrder() throws IOException {
+
+		int productId = 1;
+
+		send(1, new Event(CREATE, productId, new Product(productId, "Name 1", 1, "SA")));
+		send(2, new Event(DELETE, productId, null));
+		send(3, new Event(CREATE, productId, new Product(productId, "Name 2", 2, "SA")));
+
+		verify(channel, timeout(5000)).basicAck(1, false);
+		verify(channel, timeout(5000)).basicAck(2, false);
+		verify(channel, timeout(5000)).basicAck(3, false);
+
+		// The delete was applied after the first create and before the second one
+		assertEquals(1, (long)repository.count().block());
+		assertEquals("Name 2", repository.findByProductId(productId).block().getName());
+	}
+
+	@Test
+	public void failedEventIsRepublishedToTheDlqWithTheException() throws IOException {
+
+		int productId = 1;
+
+		send(1, new Event(CREATE, productId, new Product(productId, "Name 1", 1, "SA")));
+		// Another event, not a redelivery, fails on the unique index
+		send(2, new Event(CREATE, productId, new Product(productId, "Name 1", 1, "SA")));
+
+		ArgumentCaptor<AMQP.BasicProperties> properties = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+		verify(channel, timeout(5000)).basicPublish(eq("DLX"), eq("products.productsGroup"), properties.capture(), any(byte[].class));
+		verify(channel, timeout(5000)).basicAck(2, false);
+
+		String exceptionMessage = (String) properties.getValue().getHeaders().get("x-exception-message");
+		assertTrue(exceptionMessage.contains("Duplicate key, Product Id: " + productId));
+		assertEquals("products", properties.getValue().getHeaders().get("x-original-exchange"));
+	}
+
+	private void send(long deliveryTag, Event<Integer, Product> event) {
+		input.send(MessageBuilder.withPayload(event)
+				.setHeader(AmqpHeaders.CHANNEL, channel)
+				.setHeader(AmqpHeaders.DELIVERY_TAG, deliveryTag)
+				.setHeader(AmqpHeaders.RECEIVED_EXCHANGE, "products")
+				.setHeader(AmqpHeaders.RECEIVED_ROUTING_KEY, "#")
+				.build());
+	}
+}
@@ -1,11 +1,14 @@
 package com.hoon.msa.core.recommendation;
 
+import com.hoon.util.messaging.EventDeduplicator;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Import;
 
 @ComponentScan("com.hoon")
 @SpringBootApplication
+@Import(EventDeduplicator.class)
 public class RecommendationServiceApplication {
 
 	public static void main(String[] args) {
@@ -1,11 +1,32 @@
 package com.hoon.msa.core.recommendation.persistence;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
 public interface RecommendationRepository extends ReactiveCrudRepository<RecommendationEntity, String> {
     Flux<RecommendationEntity> findByProductId(int productId);
-}
\ No newline at end of file
+
+    /**
+     * Keyset paging on the unique (productId, recommendationId) index, sort and limit are given by the pageable.
+     */
+    Flux<RecommendationEntity> findByProductIdAndRecommendationIdGreaterThan(int productId, int recommendationId, Pageable pageable);
+
+    /**
+     * As findByProductIdAndRecommendationIdGreaterThan, without reading the content.
+     */
+    @Query(value = "{'productId': ?0, 'recommendationId': {'$gt': ?1}}", fields = "{'content': 0}")
+    Flux<RecommendationEntity> findSummariesByProductIdAndRecommendationIdGreaterThan(int productId, int recommendationId, Pageable pageable);
+
+    /**
+     * Removes all recommendations of the product with a single deleteMany.
+     *
+     * @return the number of deleted recommendations
+     */
+    Mono<Long> deleteByProductId(int productId);
+}
@@ -1,49 +1,173 @@
 package com.hoon.msa.core.recommendation.services;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hoon.api.core.recommendation.Recommendation;
 import com.hoon.api.core.recommendation.RecommendationService;
 import com.hoon.api.event.Event;
+import com.hoon.util.batch.EventBatcher;
 import com.hoon.util.exceptions.EventProcessingException;
-import lombok.RequiredArgsConstructor;
+import com.hoon.util.messaging.CreateIfAbsent;
+import com.hoon.util.messaging.CreateMode;
+import com.hoon.util.messaging.EventDeduplicator;
+import com.hoon.util.messaging.ManualAckProcessor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.StreamListener;
 import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.handler.annotation.Headers;
+import org.springframework.messaging.handler.annotation.Payload;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+
+import static com.hoon.api.event.Event.Type.CREATE;
+import static com.hoon.util.messaging.CreateMode.INSERT_IF_ABSENT;
 
 @Slf4j
 @EnableBinding(Sink.class)
-@RequiredArgsConstructor
 public class MessageProcessor {
     private final RecommendationService recommendationService;
+    private final CreateIfAbsent<Recommendation> creator;
+    private final CreateMode createMode;
+    private final EventBatcher<Recommendation> createBatcher;
+    private final boolean reactiveConsumer;
+    private final ManualAckProcessor manualAckProcessor;
+    private final MeterRegistry meterRegistry;
+    private final EventDeduplicator deduplicator;
+
+    @Autowired
+    public MessageProcessor(RecommendationService recommendationService,
+                            CreateIfAbsent<Recommendation> creator,
+                            @Value("${app.bindings.input.create-mode:insert}") CreateMode createMode,
+                            RecommendationBatchWriter batchWriter,
+                            @Value("${app.event-batch.enabled:false}") boolean batchEnabled,
+                            @Value("${app.event-batch.max-size:16}") int batchMaxSize,
+                            @Value("${app.event-batch.max-wait:50ms}") Duration batchMaxWait,
+                            @Value("${app.reactive-consumer.enabled:false}") boolean reactiveConsumer,
+                            @Value("${spring.cloud.stream.bindings.input.consumer.maxAttempts:3}") int maxAttempts,
+                            @Value("${spring.cloud.stream.bindings.input.consumer.backOffInitialInterval:1000}") long backOffInitialInterval,
+                            @Value("${spring.cloud.stream.bindings.input.consumer.backOffMaxInterval:10000}") long backOffMaxInterval,
+                            @Value("${app.reactive-consumer.dead-letter-exchange:DLX}") String deadLetterExchange,
+                            @Value("${app.reactive-consumer.dead-letter-routing-key:${spring.cloud.stream.bindings.input.destination}.${spring.cloud.stream.bindings.input.group}}") String deadLetterRoutingKey,
+                            ObjectMapper mapper,
+                            MeterRegistry meterRegistry,
+                            EventDeduplicator deduplicator) {
+        this.recommendationService = recommendationService;
+        this.creator = creator;
+        this.createMode = createMode;
+        this.createBatcher = batchEnabled ? new EventBatcher<>(batchWriter, batchMaxSize, batchMaxWait) : null;
+        this.reactiveConsumer = reactiveConsumer;
+        this.meterRegistry = meterRegistry;
+        this.deduplicator = deduplicator;
+        Retry retry = Retry.backoff(maxAttempts - 1, Duration.ofMillis(backOffInitialInterval))
+                .maxBackoff(Duration.ofMillis(backOffMaxInterval));
+        this.manualAckProcessor = new ManualAckProcessor("recommendations", retry, mapper, deadLetterExchange, deadLetterRoutingKey);
+
+        if (createMode == INSERT_IF_ABSENT) log.info("Creates the entities of the create events only if absent, without batching");
+        else if (batchEnabled) log.info("Batches create events, maxSize = {}, maxWait = {}", batchMaxSize, batchMaxWait);
+        if (reactiveConsumer) log.info("Processes events reactively with manual acknowledgements");
+    }
 
+    /**
+     * In reactive mode (app.reactive-consumer.enabled with a MANUAL acknowledge RabbitMQ binding) the message is
+     * acked once the write completes, or republished to the DLQ after the retries, without blocking the listener thread.
+     * A delete is processed after the earlier events of its product and before the later ones, see ManualAckProcessor.
+     * Otherwise the listener blocks on the write and the binder handles retries and the DLQ.
+     */
     @StreamListener(target = Sink.INPUT)
-    public void process(Event<Integer, Recommendation> event) {
+    public void process(@Payload Event<Integer, Recommendation> event, @Headers MessageHeaders headers) {
 
         log.info("Process message created at {}...", event.getEventCreatedAt());
 
+        boolean manualAck = reactiveConsumer && ManualAckProcessor.isManualAck(headers);
+
+        if (deduplicator.isDuplicate(event.getEventId())) {
+            log.info("Skips the already processed event {}", event.getEventId());
+            if (manualAck) manualAckProcessor.acknowledge(headers);
+            return;
+        }
+
+        Mono<Void> processing = timed(event, Mono.defer(() -> processEvent(event)))
+                .doOnSuccess(v -> deduplicator.processed(event.getEventId()));
+
+        if (!manualAck) {
+            processing.block();
+            log.info("Message processing done!");
+            return;
+        }
+
+        // Only a delete is ordered against the other events of its product, the creates of different entities of the
+        // product, and the events of different products, are processed concurrently and can share a batch
+        manualAckProcessor.process(event.getKey(), event.getEventType() != CREATE, event, processing, headers);
+    }
+
+    private Mono<Void> processEvent(Event<Integer, Recommendation> event) {
         switch (event.getEventType()) {
 
             case CREATE:
                 Recommendation recommendation = event.getData();
                 log.info("Create recommendation with ID: {}/{}", recommendation.getProductId(), recommendation.getRecommendationId());
-                recommendationService.createRecommendation(recommendation);
-                break;
+                if (createMode == INSERT_IF_ABSENT) {
+                    return creator.createIfAbsent(recommendation)
+                            .doOnNext(created -> countCreate(created))
+                            .then();
+                }
+                if (createBatcher != null) {
+                    // The group commit blocks its submitters, keep it off the listener and driver threads
+                    return Mono.fromRunnable(() -> createBatcher.submit(recommendation))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .then();
+                }
+                return recommendationService.createRecommendation(recommendation).then();
 
             case DELETE:
                 int productId = event.getKey();
                 log.info("Delete recommendations with ProductID: {}", productId);
-                recommendationService.deleteRecommendations(productId);
-                break;
+                return recommendationService.deleteRecommendations(productId);
 
             default:
                 String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
                 log.warn(errorMessage);
-                throw new EventProcessingException(errorMessage);
+                return Mono.error(new EventProcessingException(errorMessage));
         }
+    }
+
+    /**
+     * Times each processing attempt as messages.process, tagged with the event type and the outcome.
+     */
+    private Mono<Void> timed(Event<?, ?> event, Mono<Void> processing) {
+        return Mono.defer(() -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            return processing
+                    .doOnSuccess(v -> sample.stop(processTimer(event, "success")))
+                    .doOnError(ex -> sample.stop(processTimer(event, "error")));
+        });
+    }
+
+    private Timer processTimer(Event<?, ?> event, String outcome) {
+        return Timer.builder("messages.process")
+                .description("Processing time of the received events")
+                .tags("type", String.valueOf(event.getEventType()), "outcome", outcome)
+                .register(meterRegistry);
+    }
 
-        log.info("Message processing done!");
+    /**
+     * Counts the entities created if absent as messages.create, tagged with the result: created or existing.
+     */
+    private void countCreate(boolean created) {
+        if (!created) log.info("The entity already exists, nothing to create");
+        Counter.builder("messages.create")
+                .description("Entities of the create events, created or already existing")
+                .tag("result", created ? "created" : "existing")
+                .register(meterRegistry)
+                .increment();
     }
 }
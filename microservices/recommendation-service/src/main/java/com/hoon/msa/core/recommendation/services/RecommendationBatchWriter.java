@@ -0,0 +1,40 @@
+package com.hoon.msa.core.recommendation.services;
+
+import com.hoon.api.core.recommendation.Recommendation;
+import com.hoon.msa.core.recommendation.persistence.RecommendationEntity;
+import com.hoon.util.batch.MongoBatchWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Inserts a batch of recommendations with a single unordered insertMany, see MongoBatchWriter.
+ */
+@Component
+public class RecommendationBatchWriter extends MongoBatchWriter<Recommendation, RecommendationEntity> {
+
+    private final RecommendationMapper mapper;
+
+    @Autowired
+    public RecommendationBatchWriter(ReactiveMongoTemplate mongoTemplate, RecommendationMapper mapper) {
+        super(mongoTemplate, RecommendationEntity.class);
+        this.mapper = mapper;
+    }
+
+    @Override
+    protected int productId(Recommendation recommendation) {
+        return recommendation.getProductId();
+    }
+
+    @Override
+    protected RecommendationEntity toEntity(Recommendation recommendation) {
+        RecommendationEntity entity = mapper.apiToEntity(recommendation);
+        entity.setVersion(0);
+        return entity;
+    }
+
+    @Override
+    protected String key(Recommendation recommendation) {
+        return "Product Id: " + recommendation.getProductId() + ", Recommendation Id:" + recommendation.getRecommendationId();
+    }
+}
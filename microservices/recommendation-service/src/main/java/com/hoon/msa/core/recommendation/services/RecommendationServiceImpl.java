@@ -5,35 +5,58 @@ import com.hoon.api.core.recommendation.RecommendationService;
 import com.hoon.msa.core.recommendation.persistence.RecommendationEntity;
 import com.hoon.msa.core.recommendation.persistence.RecommendationRepository;
 import com.hoon.util.exceptions.InvalidInputException;
+import com.hoon.util.http.ConditionalGetFilter;
+import com.hoon.util.http.ETag;
 import com.hoon.util.http.ServiceUtil;
+import com.hoon.util.messaging.CreateIfAbsent;
+import com.hoon.util.reactor.StageMetrics;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 @Slf4j
 @RestController
-public class RecommendationServiceImpl implements RecommendationService {
+public class RecommendationServiceImpl implements RecommendationService, CreateIfAbsent<Recommendation> {
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int BATCH_QUERY_CONCURRENCY = 8;
+    // The default limit of a single product read, also the limit per product of a batch read
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final ServiceUtil serviceUtil;
     private final RecommendationRepository repository;
     private final RecommendationMapper mapper;
+    private final StageMetrics stageMetrics;
+    private final ReactiveMongoTemplate mongoTemplate;
 
     @Autowired
-    public RecommendationServiceImpl(RecommendationRepository repository, RecommendationMapper mapper, ServiceUtil serviceUtil) {
+    public RecommendationServiceImpl(RecommendationRepository repository, RecommendationMapper mapper, ServiceUtil serviceUtil, StageMetrics stageMetrics, ReactiveMongoTemplate mongoTemplate) {
         this.repository = repository;
         this.mapper = mapper;
         this.serviceUtil = serviceUtil;
+        this.stageMetrics = stageMetrics;
+        this.mongoTemplate = mongoTemplate;
     }
 
 
     @Override
-    public Flux<Recommendation> getRecommendations(int productId) {
+    public Flux<Recommendation> getRecommendations(int productId, int afterRecommendationId, int limit, boolean content) {
 //        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
 //
 //        if (productId == 113) {
@@ -51,15 +74,46 @@ public class RecommendationServiceImpl implements RecommendationService {
 //        return list;
 
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        if (afterRecommendationId < 0) throw new InvalidInputException("Invalid afterRecommendationId: " + afterRecommendationId);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) throw new InvalidInputException("Invalid limit: " + limit);
+
+        Pageable page = PageRequest.of(0, limit, Sort.by("recommendationId"));
+        Flux<RecommendationEntity> entities = content ?
+                repository.findByProductIdAndRecommendationIdGreaterThan(productId, afterRecommendationId, page) :
+                repository.findSummariesByProductIdAndRecommendationIdGreaterThan(productId, afterRecommendationId, page);
 
-        return repository.findByProductId(productId)
-                .log()
+        // The ETag covers the whole page, answers 304 Not Modified if the client has the current page.
+        // Streamed responses are not collected, they have no ETag.
+        return ConditionalGetFilter.ifModified(entities.transform(stageMetrics.flux("recommendation.get")), list -> etag(list, content))
                 .map(e -> mapper.entityToApi(e))
                 .map(e -> {e.setServiceAddress(serviceUtil.getServiceAddress()); return e;});
     }
 
+    private static String etag(List<RecommendationEntity> entities, boolean content) {
+        ETag etag = new ETag().add(content ? 1 : 0).add(entities.size());
+        entities.forEach(e -> etag.add(e.getRecommendationId()).add(e.getVersion()));
+        return etag.toString();
+    }
+
     @Override
-    public Recommendation createRecommendation(Recommendation body) {
+    public Flux<Recommendation> getRecommendationsForProducts(List<Integer> productIds) {
+        if (productIds.isEmpty() || productIds.size() > MAX_BATCH_SIZE) throw new InvalidInputException("Invalid number of productIds: " + productIds.size());
+        productIds.stream().filter(productId -> productId < 1).findFirst().ifPresent(productId -> {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        });
+
+        // One query per product, run concurrently but emitted in the requested order, so the rows of a product
+        // arrive together and a client can complete each product as soon as the next one starts.
+        // Each product is limited to the first page, as a single product read without a limit
+        Pageable firstPage = PageRequest.of(0, DEFAULT_PAGE_SIZE, Sort.by("recommendationId"));
+        return Flux.fromIterable(new LinkedHashSet<>(productIds))
+                .flatMapSequential(productId -> repository.findByProductIdAndRecommendationIdGreaterThan(productId, 0, firstPage), BATCH_QUERY_CONCURRENCY)
+                .map(e -> mapper.entityToApi(e))
+                .map(e -> {e.setServiceAddress(serviceUtil.getServiceAddress()); return e;});
+    }
+
+    @Override
+    public Mono<Recommendation> createRecommendation(Recommendation body) {
 //        try {
 //            RecommendationEntity entity = mapper.apiToEntity(body);
 //            RecommendationEntity newEntity = repository.save(entity);
@@ -73,24 +127,52 @@ public class RecommendationServiceImpl implements RecommendationService {
         if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
 
         RecommendationEntity entity = mapper.apiToEntity(body);
-        Mono<Recommendation> newEntity = repository.save(entity)
-                .log()
+        return repository.save(entity)
+                .transform(stageMetrics.mono("recommendation.create"))
                 .onErrorMap(
                         DuplicateKeyException.class,
                         ex -> new InvalidInputException("Duplicate key, Product Id: " + body.getProductId() + ", Recommendation Id:" + body.getRecommendationId()))
                 .map(e -> mapper.entityToApi(e));
+    }
+
+    /**
+     * One upsert on productId and recommendationId that only sets the fields when it inserts,
+     * an existing recommendation is left as is.
+     */
+    @Override
+    public Mono<Boolean> createIfAbsent(Recommendation body) {
+        if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
+
+        RecommendationEntity entity = mapper.apiToEntity(body);
+        entity.setVersion(0);
+        Document document = new Document();
+        mongoTemplate.getConverter().write(entity, document);
+
+        // The key fields are taken from the query
+        document.remove("_id");
+        document.remove("productId");
+        document.remove("recommendationId");
+        Update update = new Update();
+        document.forEach(update::setOnInsert);
 
-        return newEntity.block();
+        Query query = new Query(Criteria.where("productId").is(body.getProductId()).and("recommendationId").is(body.getRecommendationId()));
+        return mongoTemplate.upsert(query, update, RecommendationEntity.class)
+                .map(result -> result.getUpsertedId() != null)
+                // Of two concurrent upserts of the same key both may try to insert, the loser fails on the unique index
+                .onErrorReturn(DuplicateKeyException.class, false)
+                .transform(stageMetrics.mono("recommendation.create-if-absent"));
     }
 
     @Override
-    public void deleteRecommendations(int productId) {
+    public Mono<Void> deleteRecommendations(int productId) {
 //        log.debug("deleteRecommendations: tries to delete recommendations for the product with productId: {}", productId);
 //        repository.deleteAll(repository.findByProductId(productId));
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
 
         log.debug("deleteRecommendations: tries to delete recommendations for the product with productId: {}", productId);
-        repository.deleteAll(repository.findByProductId(productId)).block();
+        return repository.deleteByProductId(productId)
+                .doOnNext(count -> log.debug("deleteRecommendations: deleted {} recommendations for the product with productId: {}", count, productId))
+                .then();
     }
 
 }
@@ -0,0 +1,60 @@
+package com.hoon.msa.core.recommendation;
+
+import com.hoon.api.core.recommendation.Recommendation;
+import com.hoon.msa.core.recommendation.persistence.RecommendationRepository;
+import com.hoon.msa.core.recommendation.services.RecommendationBatchWriter;
+import com.hoon.util.exceptions.InvalidInputException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@SpringBootTest(properties = {"spring.data.mongodb.port: 0"})
+class BatchWriterTests {
+	@Autowired
+	private RecommendationBatchWriter writer;
+	@Autowired
+	private RecommendationRepository repository;
+
+	@BeforeEach
+	public void setupDb() {
+		repository.deleteAll().block();
+	}
+
+	@Test
+	public void batchIsInserted() {
+
+		List<RuntimeException> failures = writer.write(List.of(recommendation(1, 1), recommendation(1, 2), recommendation(2, 1)));
+
+		assertEquals(3, failures.size());
+		failures.forEach(failure -> assertNull(failure));
+		assertEquals(3, (long)repository.count().block());
+	}
+
+	@Test
+	public void failingRecommendationsOnlyFailThemselves() {
+
+		writer.write(List.of(recommendation(1, 1)));
+
+		// A duplicate and an invalid recommendation in the middle of the batch
+		List<RuntimeException> failures = writer.write(List.of(recommendation(1, 2), recommendation(1, 1), recommendation(0, 1), recommendation(1, 3)));
+
+		assertNull(failures.get(0));
+		assertTrue(failures.get(1) instanceof InvalidInputException);
+		assertEquals("Duplicate key, Product Id: 1, Recommendation Id:1", failures.get(1).getMessage());
+		assertTrue(failures.get(2) instanceof InvalidInputException);
+		assertEquals("Invalid productId: 0", failures.get(2).getMessage());
+		assertNull(failures.get(3));
+		assertEquals(3, (long)repository.findByProductId(1).count().block());
+	}
+
+	private Recommendation recommendation(int productId, int recommendationId) {
+		return new Recommendation(productId, recommendationId, "a", 1, "c", "SA");
+	}
+}
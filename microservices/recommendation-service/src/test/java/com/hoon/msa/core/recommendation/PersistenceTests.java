@@ -9,6 +9,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.TestPropertySource;
 
 import java.util.List;
@@ -88,6 +91,16 @@ public class PersistenceTests {
         assertFalse(repository.existsById(savedEntity.getId()).block());
     }
 
+    @Test
+   	public void deleteByProductId() {
+        repository.save(new RecommendationEntity(1, 3, "a", 3, "c")).block();
+        repository.save(new RecommendationEntity(2, 2, "a", 3, "c")).block();
+
+        assertEquals(2, (long)repository.deleteByProductId(1).block());
+        assertEquals(1, (long)repository.count().block());
+        assertEquals(0, (long)repository.deleteByProductId(1).block());
+    }
+
     @Test
    	public void getByProductId() {
 //        List<RecommendationEntity> entityList = repository.findByProductId(savedEntity.getProductId());
@@ -101,6 +114,19 @@ public class PersistenceTests {
         assertEqualsRecommendation(savedEntity, entityList.get(0));
     }
 
+    @Test
+   	public void getSummariesByProductId() {
+        repository.save(new RecommendationEntity(1, 3, "a", 3, "c")).block();
+
+        Pageable page = PageRequest.of(0, 10, Sort.by("recommendationId"));
+        List<RecommendationEntity> entityList = repository.findSummariesByProductIdAndRecommendationIdGreaterThan(savedEntity.getProductId(), 2, page).collectList().block();
+
+        assertThat(entityList, hasSize(1));
+        assertEquals(3, entityList.get(0).getRecommendationId());
+        assertEquals("a", entityList.get(0).getAuthor());
+        assertNull(entityList.get(0).getContent());
+    }
+
 //    @Test(expected = DuplicateKeyException.class)
 //   	public void duplicateError() {
 //        RecommendationEntity entity = new RecommendationEntity(1, 2, "a", 3, "c");
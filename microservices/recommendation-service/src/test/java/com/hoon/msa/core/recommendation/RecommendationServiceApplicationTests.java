@@ -1,20 +1,152 @@
 package com.hoon.msa.core.recommendation;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.hoon.api.core.recommendation.Recommendation;
+import com.hoon.api.event.Event;
+import com.hoon.msa.core.recommendation.persistence.RecommendationRepository;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.integration.channel.AbstractMessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
 
+import static com.hoon.api.event.Event.Type.CREATE;
+import static com.hoon.util.messaging.EventMessageConverters.APPLICATION_CBOR;
+import static org.junit.Assert.assertEquals;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment=RANDOM_PORT, properties = {"spring.data.mongodb.port: 0"})
 @TestPropertySource(properties = "spring.mongodb.embedded.version=3.5.5")
 class RecommendationServiceApplicationTests {
+	@Autowired
+	private WebTestClient client;
+	@Autowired
+	private RecommendationRepository repository;
+	@Autowired
+	private Sink channels;
+	private AbstractMessageChannel input = null;
+
+	@BeforeEach
+	public void setupDb() {
+		input = (AbstractMessageChannel) channels.input();
+		repository.deleteAll().block();
+	}
 
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	public void getRecommendationsNotModified() {
+
+		int productId = 1;
+		sendCreateRecommendationEvent(productId, 1);
+		sendCreateRecommendationEvent(productId, 2);
+
+		String etag = client.get()
+				.uri("/recommendation?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().exists("ETag")
+				.returnResult(String.class)
+				.getResponseHeaders().getETag();
+
+		client.get()
+				.uri("/recommendation?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.ifNoneMatch(etag)
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectBody().isEmpty();
+
+		// A new recommendation changes the ETag
+		sendCreateRecommendationEvent(productId, 3);
+
+		client.get()
+				.uri("/recommendation?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.ifNoneMatch(etag)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(3);
+	}
+
+	@Test
+	public void streamedRecommendationsHaveNoETag() {
+
+		int productId = 1;
+		sendCreateRecommendationEvent(productId, 1);
+		sendCreateRecommendationEvent(productId, 2);
+
+		String etag = client.get()
+				.uri("/recommendation?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(String.class)
+				.getResponseHeaders().getETag();
+
+		// The stream is not collected to compute an ETag, it is always sent
+		client.get()
+				.uri("/recommendation?productId=" + productId)
+				.accept(APPLICATION_NDJSON)
+				.ifNoneMatch(etag)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().doesNotExist("ETag")
+				.expectBodyList(Recommendation.class).hasSize(2);
+	}
+
+	@Test
+	public void getRecommendationsWithoutContent() {
+
+		int productId = 1;
+		sendCreateRecommendationEvent(productId, 1);
+		sendCreateRecommendationEvent(productId, 2);
+
+		client.get()
+				.uri("/recommendation?productId=" + productId + "&content=false")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[1].author").isEqualTo("Author 2")
+				.jsonPath("$[1].rate").isEqualTo(2)
+				.jsonPath("$[1].content").doesNotExist();
+	}
+
+	@Test
+	public void createRecommendationFromCborEvent() throws JsonProcessingException {
+
+		int productId = 1;
+		Recommendation recommendation = new Recommendation(productId, 1, "Author 1", 1, "Content 1", "SA");
+		byte[] payload = Jackson2ObjectMapperBuilder.cbor().build().writeValueAsBytes(new Event(CREATE, productId, recommendation));
+
+		// Decoded by the CBOR converter according to the content type header
+		input.send(MessageBuilder.withPayload(payload).setHeader(MessageHeaders.CONTENT_TYPE, APPLICATION_CBOR).build());
+
+		assertEquals(1, (long)repository.findByProductId(productId).count().block());
+	}
+
+	private void sendCreateRecommendationEvent(int productId, int recommendationId) {
+		Recommendation recommendation = new Recommendation(productId, recommendationId, "Author " + recommendationId, recommendationId, "Content " + recommendationId, "SA");
+		Event<Integer, Recommendation> event = new Event(CREATE, productId, recommendation);
+		input.send(new GenericMessage<>(event));
+	}
 }
@@ -0,0 +1,106 @@
+package com.hoon.msa.core.review;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the blocking JDBC calls of the review service on the delegate.
+ *
+ * The delegate is either a fixed pool sized to the connection pool, or an elastic pool with maxConcurrency set to
+ * the size of the connection pool. Tasks over maxConcurrency wait in a queue here, not on a thread of the delegate,
+ * and are handed to the delegate when a running task is done, so the elastic pool only keeps as many threads as
+ * there are connections in use.
+ *
+ * Reports the number of tasks waiting to run (review.jdbc.queued) and the time each task waited (review.jdbc.wait).
+ */
+public class JdbcExecutor implements Executor {
+
+    private final Executor delegate;
+    private final Semaphore permits;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Timer waitTime;
+
+    /**
+     * @param delegate
+     * @param maxConcurrency max number of concurrently running tasks, or 0 if already limited by the delegate
+     * @param mode tags the metrics
+     * @param meterRegistry
+     */
+    public JdbcExecutor(Executor delegate, int maxConcurrency, String mode, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.permits = (maxConcurrency > 0) ? new Semaphore(maxConcurrency) : null;
+
+        Gauge.builder("review.jdbc.queued", queued, AtomicInteger::get)
+                .description("JDBC tasks waiting for a thread or a connection")
+                .tag("mode", mode)
+                .register(meterRegistry);
+        this.waitTime = Timer.builder("review.jdbc.wait")
+                .description("Time a JDBC task waited before it started to run")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        long submittedAt = System.nanoTime();
+        Runnable timed = () -> {
+            queued.decrementAndGet();
+            waitTime.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+            task.run();
+        };
+
+        queued.incrementAndGet();
+        if (permits == null) {
+            try {
+                delegate.execute(timed);
+            } catch (RejectedExecutionException ree) {
+                queued.decrementAndGet();
+                throw ree;
+            }
+            return;
+        }
+
+        pending.add(timed);
+        drain();
+    }
+
+    /**
+     * Hands the pending tasks to the delegate while there are permits, a task releases its permit and drains again
+     * when it is done.
+     */
+    private void drain() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            Runnable next = pending.poll();
+            if (next == null) {
+                // Taken by a concurrent drain, check again for a task added meanwhile
+                permits.release();
+                continue;
+            }
+
+            try {
+                delegate.execute(() -> {
+                    try {
+                        next.run();
+                    } finally {
+                        permits.release();
+                        drain();
+                    }
+                });
+            } catch (RejectedExecutionException ree) {
+                queued.decrementAndGet();
+                permits.release();
+                throw ree;
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.hoon.msa.core.review;
 
+import com.hoon.util.messaging.EventDeduplicator;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -8,6 +10,9 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Profiles;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
@@ -16,26 +21,39 @@ import java.util.concurrent.Executors;
 @Slf4j
 @ComponentScan("com.hoon")
 @SpringBootApplication
+@Import(EventDeduplicator.class)
 public class ReviewServiceApplication {
 	private final Integer connectionPoolSize;
+	private final String jdbcSchedulerMode;
 
 	@Autowired
 	public ReviewServiceApplication(
-			@Value("${spring.datasource.maximum-pool-size:10}")
-			Integer connectionPoolSize) {
+			@Value("${spring.datasource.hikari.maximum-pool-size:${spring.datasource.maximum-pool-size:10}}")
+			Integer connectionPoolSize,
+			@Value("${app.jdbc-scheduler.mode:fixed}")
+			String jdbcSchedulerMode) {
 		this.connectionPoolSize = connectionPoolSize;
+		this.jdbcSchedulerMode = jdbcSchedulerMode;
 	}
 
 	@Bean
-	public Scheduler jdbcScheduler() {
+	@Profile("!r2dbc")
+	public Scheduler jdbcScheduler(MeterRegistry meterRegistry) {
+		if ("elastic".equals(jdbcSchedulerMode)) {
+			log.info("Creates an elastic jdbcScheduler with connectionPoolSize = " + connectionPoolSize);
+			return Schedulers.fromExecutor(new JdbcExecutor(Executors.newCachedThreadPool(), connectionPoolSize, "elastic", meterRegistry));
+		}
+
 		log.info("Creates a jdbcScheduler with connectionPoolSize = " + connectionPoolSize);
-		return Schedulers.fromExecutor(Executors.newFixedThreadPool(connectionPoolSize));
+		return Schedulers.fromExecutor(new JdbcExecutor(Executors.newFixedThreadPool(connectionPoolSize), 0, "fixed", meterRegistry));
 	}
 
 	public static void main(String[] args) {
 		ConfigurableApplicationContext ctx = SpringApplication.run(ReviewServiceApplication.class, args);
 
-		String mysqlUri = ctx.getEnvironment().getProperty("spring.datasource.url");
+		String mysqlUri = ctx.getEnvironment().acceptsProfiles(Profiles.of("r2dbc")) ?
+				ctx.getEnvironment().getProperty("spring.r2dbc.url") :
+				ctx.getEnvironment().getProperty("spring.datasource.url");
 		log.info("Connected to MySQL: " + mysqlUri);
 	}
 
@@ -32,4 +32,16 @@ public class ReviewEntity {
         this.subject = subject;
         this.content = content;
     }
+
+    /**
+     * A review without its content, see ReviewRepository.findSummariesByProductIdAndReviewIdGreaterThan
+     */
+    public ReviewEntity(int id, int version, int productId, int reviewId, String author, String subject) {
+        this.id = id;
+        this.version = version;
+        this.productId = productId;
+        this.reviewId = reviewId;
+        this.author = author;
+        this.subject = subject;
+    }
 }
@@ -1,6 +1,10 @@
 package com.hoon.msa.core.review.persistence;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
@@ -9,4 +13,31 @@ import java.util.List;
 public interface ReviewRepository extends CrudRepository<ReviewEntity, Integer> {
     @Transactional(readOnly = true)
     List<ReviewEntity> findByProductId(int productId);
+
+    /**
+     * Keyset paging on the unique (productId, reviewId) index, sort and limit are given by the pageable.
+     */
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdAndReviewIdGreaterThan(int productId, int reviewId, Pageable pageable);
+
+    /**
+     * As findByProductIdAndReviewIdGreaterThan, without reading the content. The returned entities are not managed.
+     */
+    @Transactional(readOnly = true)
+    @Query("SELECT new com.hoon.msa.core.review.persistence.ReviewEntity(r.id, r.version, r.productId, r.reviewId, r.author, r.subject) " +
+           "FROM ReviewEntity r WHERE r.productId = :productId AND r.reviewId > :reviewId")
+    List<ReviewEntity> findSummariesByProductIdAndReviewIdGreaterThan(@Param("productId") int productId, @Param("reviewId") int reviewId, Pageable pageable);
+
+    @Transactional(readOnly = true)
+    boolean existsByProductIdAndReviewId(int productId, int reviewId);
+
+    /**
+     * Removes all reviews of the product with a single DELETE statement, without loading them or checking their versions.
+     *
+     * @return the number of deleted reviews
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ReviewEntity r WHERE r.productId = :productId")
+    int deleteByProductId(@Param("productId") int productId);
 }
@@ -0,0 +1,36 @@
+package com.hoon.msa.core.review.persistence.r2dbc;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveReviewRepository extends R2dbcRepository<ReviewRecord, Integer> {
+    Flux<ReviewRecord> findByProductId(int productId);
+
+    /**
+     * Keyset paging on the unique (product_id, review_id) index, sort and limit are given by the pageable.
+     */
+    Flux<ReviewRecord> findByProductIdAndReviewIdGreaterThan(int productId, int reviewId, Pageable pageable);
+
+    /**
+     * As findByProductIdAndReviewIdGreaterThan, without reading the content.
+     */
+    @Query("SELECT id, version, product_id, review_id, author, subject FROM reviews " +
+           "WHERE product_id = :productId AND review_id > :reviewId ORDER BY review_id LIMIT :limit")
+    Flux<ReviewRecord> findSummariesByProductIdAndReviewIdGreaterThan(@Param("productId") int productId, @Param("reviewId") int reviewId, @Param("limit") int limit);
+
+    Mono<Boolean> existsByProductIdAndReviewId(int productId, int reviewId);
+
+    /**
+     * Removes all reviews of the product with a single DELETE statement.
+     *
+     * @return the number of deleted reviews
+     */
+    @Modifying
+    @Query("DELETE FROM reviews WHERE product_id = :productId")
+    Mono<Integer> deleteByProductId(@Param("productId") int productId);
+}
@@ -0,0 +1,38 @@
+package com.hoon.msa.core.review.persistence.r2dbc;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * The R2DBC mapping of the reviews table, see ReviewEntity for the JPA mapping.
+ * The id is generated by the database, the table is created by r2dbc/schema.sql.
+ */
+@Setter
+@Getter
+@NoArgsConstructor
+@Table("reviews")
+public class ReviewRecord {
+    @Id
+    private Integer id;
+
+    @Version
+    private Integer version;
+
+    private int productId;
+    private int reviewId;
+    private String author;
+    private String subject;
+    private String content;
+
+    public ReviewRecord(int productId, int reviewId, String author, String subject, String content) {
+        this.productId = productId;
+        this.reviewId = reviewId;
+        this.author = author;
+        this.subject = subject;
+        this.content = content;
+    }
+}
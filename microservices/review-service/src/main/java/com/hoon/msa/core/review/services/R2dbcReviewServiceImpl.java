@@ -0,0 +1,127 @@
+package com.hoon.msa.core.review.services;
+
+import com.hoon.api.core.review.Review;
+import com.hoon.api.core.review.ReviewService;
+import com.hoon.msa.core.review.persistence.r2dbc.ReactiveReviewRepository;
+import com.hoon.msa.core.review.persistence.r2dbc.ReviewRecord;
+import com.hoon.util.exceptions.InvalidInputException;
+import com.hoon.util.http.ConditionalGetFilter;
+import com.hoon.util.http.ETag;
+import com.hoon.util.http.ServiceUtil;
+import com.hoon.util.messaging.CreateIfAbsent;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * The R2DBC based implementation, active with the r2dbc profile. Reads and writes are non-blocking end to end,
+ * no jdbcScheduler is involved.
+ */
+@Slf4j
+@AllArgsConstructor
+@Profile("r2dbc")
+@RestController
+public class R2dbcReviewServiceImpl implements ReviewService, CreateIfAbsent<Review> {
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int BATCH_QUERY_CONCURRENCY = 8;
+    // The default limit of a single product read, also the limit per product of a batch read
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final ServiceUtil serviceUtil;
+    private final ReactiveReviewRepository repository;
+    private final ReviewMapper mapper;
+
+    @Override
+    public Flux<Review> getReviews(int productId, int afterReviewId, int limit, boolean content) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        if (afterReviewId < 0) throw new InvalidInputException("Invalid afterReviewId: " + afterReviewId);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) throw new InvalidInputException("Invalid limit: " + limit);
+
+        log.info("Will get reviews for product with id={}, afterReviewId={}, limit={}, content={}", productId, afterReviewId, limit, content);
+
+        Pageable page = PageRequest.of(0, limit, Sort.by("reviewId"));
+        Flux<ReviewRecord> records = content ?
+                repository.findByProductIdAndReviewIdGreaterThan(productId, afterReviewId, page) :
+                repository.findSummariesByProductIdAndReviewIdGreaterThan(productId, afterReviewId, limit);
+
+        // The ETag covers the whole page, answers 304 Not Modified if the client has the current page.
+        // Streamed responses are not collected, they have no ETag.
+        return ConditionalGetFilter.ifModified(records, list -> etag(list, content))
+                .map(e -> mapper.recordToApi(e))
+                .map(e -> {e.setServiceAddress(serviceUtil.getServiceAddress()); return e;});
+    }
+
+    private static String etag(List<ReviewRecord> records, boolean content) {
+        ETag etag = new ETag().add(content ? 1 : 0).add(records.size());
+        records.forEach(r -> etag.add(r.getReviewId()).add(r.getVersion()));
+        return etag.toString();
+    }
+
+    @Override
+    public Flux<Review> getReviewsForProducts(List<Integer> productIds) {
+        if (productIds.isEmpty() || productIds.size() > MAX_BATCH_SIZE) throw new InvalidInputException("Invalid number of productIds: " + productIds.size());
+        productIds.stream().filter(productId -> productId < 1).findFirst().ifPresent(productId -> {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        });
+
+        log.info("Will get reviews for products with ids={}", productIds);
+
+        // One query per product, run concurrently but emitted in the requested order, grouped by product.
+        // Each product is limited to the first page, as a single product read without a limit
+        Pageable firstPage = PageRequest.of(0, DEFAULT_PAGE_SIZE, Sort.by("reviewId"));
+        return Flux.fromIterable(new LinkedHashSet<>(productIds))
+                .flatMapSequential(productId -> repository.findByProductIdAndReviewIdGreaterThan(productId, 0, firstPage), BATCH_QUERY_CONCURRENCY)
+                .map(e -> mapper.recordToApi(e))
+                .map(e -> {e.setServiceAddress(serviceUtil.getServiceAddress()); return e;});
+    }
+
+    @Override
+    public Mono<Review> createReview(Review body) {
+        if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
+
+        ReviewRecord record = mapper.apiToRecord(body);
+        return repository.save(record)
+                .onErrorMap(
+                        DataIntegrityViolationException.class,
+                        ex -> new InvalidInputException("Duplicate key, Product Id: " + body.getProductId() + ", Review Id:" + body.getReviewId()))
+                .map(e -> mapper.recordToApi(e))
+                .doOnNext(e -> log.debug("createReview: created a review entity: {}/{}", body.getProductId(), body.getReviewId()));
+    }
+
+    /**
+     * Looks the review up on the unique index before inserting it, a replayed review costs one read and no exception.
+     */
+    @Override
+    public Mono<Boolean> createIfAbsent(Review body) {
+        if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
+
+        ReviewRecord record = mapper.apiToRecord(body);
+        return repository.existsByProductIdAndReviewId(body.getProductId(), body.getReviewId())
+                .flatMap(exists -> exists ? Mono.just(false) : repository.save(record)
+                        .thenReturn(true)
+                        // Created concurrently since the lookup
+                        .onErrorReturn(DataIntegrityViolationException.class, false))
+                .doOnNext(created -> log.debug("createReviewIfAbsent: {} the review {}/{}", created ? "created" : "found", body.getProductId(), body.getReviewId()));
+    }
+
+    @Override
+    public Mono<Void> deleteReviews(int productId) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+
+        log.debug("deleteReviews: tries to delete reviews for the product with productId: {}", productId);
+        return repository.deleteByProductId(productId)
+                .doOnNext(count -> log.debug("deleteReviews: deleted {} reviews for the product with productId: {}", count, productId))
+                .then();
+    }
+}
@@ -0,0 +1,75 @@
+package com.hoon.msa.core.review.services;
+
+import com.hoon.api.core.review.Review;
+import com.hoon.msa.core.review.persistence.ReviewEntity;
+import com.hoon.msa.core.review.persistence.ReviewRepository;
+import com.hoon.util.batch.EventBatcher;
+import com.hoon.util.exceptions.InvalidInputException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Inserts a batch of reviews in one transaction, sent as JDBC batch inserts (see hibernate.jdbc.batch_size).
+ *
+ * If the batch fails, e.g. on a duplicate review, the transaction is rolled back and the reviews are inserted
+ * one by one instead, so only the offending reviews are reported as failed.
+ */
+@Slf4j
+@Profile("!r2dbc")
+@Component
+public class ReviewBatchWriter implements EventBatcher.BatchWriter<Review> {
+
+    private final ReviewRepository repository;
+    private final ReviewMapper mapper;
+
+    @Autowired
+    public ReviewBatchWriter(ReviewRepository repository, ReviewMapper mapper) {
+        this.repository = repository;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public List<RuntimeException> write(List<Review> reviews) {
+        List<RuntimeException> failures = new ArrayList<>(Collections.nCopies(reviews.size(), null));
+
+        // Invalid reviews are reported as failed without being sent to the database
+        List<Review> validReviews = new ArrayList<>();
+        for (int i = 0; i < reviews.size(); i++) {
+            Review review = reviews.get(i);
+            if (review.getProductId() < 1) failures.set(i, new InvalidInputException("Invalid productId: " + review.getProductId()));
+            else validReviews.add(review);
+        }
+        if (validReviews.isEmpty()) return failures;
+
+        try {
+            repository.saveAll(mapper.apiListToEntityList(validReviews));
+            log.debug("write: inserted {} reviews in one batch", validReviews.size());
+            return failures;
+
+        } catch (RuntimeException ex) {
+            log.debug("write: batch of {} reviews failed, falls back to single inserts: {}", validReviews.size(), ex.getMessage());
+        }
+
+        for (int i = 0; i < reviews.size(); i++) {
+            if (failures.get(i) != null) continue;
+
+            Review review = reviews.get(i);
+            try {
+                ReviewEntity entity = mapper.apiToEntity(review);
+                repository.save(entity);
+            } catch (DataIntegrityViolationException dive) {
+                failures.set(i, new InvalidInputException("Duplicate key, Product Id: " + review.getProductId() + ", Review Id:" + review.getReviewId()));
+            } catch (RuntimeException ex) {
+                failures.set(i, ex);
+            }
+        }
+        return failures;
+    }
+}
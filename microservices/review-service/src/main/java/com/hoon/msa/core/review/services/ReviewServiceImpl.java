@@ -5,31 +5,50 @@ import com.hoon.api.core.review.ReviewService;
 import com.hoon.msa.core.review.persistence.ReviewEntity;
 import com.hoon.msa.core.review.persistence.ReviewRepository;
 import com.hoon.util.exceptions.InvalidInputException;
+import com.hoon.util.http.ConditionalGetFilter;
+import com.hoon.util.http.ETag;
 import com.hoon.util.http.ServiceUtil;
+import com.hoon.util.messaging.CreateIfAbsent;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.reactivestreams.Publisher;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
 
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.function.Supplier;
 
 import static java.util.logging.Level.FINE;
 
+/**
+ * The default, JPA based implementation. The blocking repository calls run on the jdbcScheduler.
+ */
 @Slf4j
 @AllArgsConstructor
+@Profile("!r2dbc")
 @RestController
-public class ReviewServiceImpl implements ReviewService {
+public class ReviewServiceImpl implements ReviewService, CreateIfAbsent<Review> {
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int BATCH_QUERY_CONCURRENCY = 8;
+    // The default limit of a single product read, also the limit per product of a batch read
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final Scheduler scheduler;
     private final ServiceUtil serviceUtil;
     private final ReviewRepository repository;
     private final ReviewMapper mapper;
 
     @Override
-    public Flux<Review> getReviews(int productId) {
+    public Flux<Review> getReviews(int productId, int afterReviewId, int limit, boolean content) {
 //        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
 //
 //        if (productId == 213) {
@@ -46,20 +65,60 @@ public class ReviewServiceImpl implements ReviewService {
 //        return list;
 
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        if (afterReviewId < 0) throw new InvalidInputException("Invalid afterReviewId: " + afterReviewId);
+        if (limit < 1 || limit > MAX_PAGE_SIZE) throw new InvalidInputException("Invalid limit: " + limit);
+
+        log.info("Will get reviews for product with id={}, afterReviewId={}, limit={}, content={}", productId, afterReviewId, limit, content);
 
-        log.info("Will get reviews for product with id={}", productId);
+        // The ETag covers the whole page, answers 304 Not Modified if the client has the current page.
+        // Streamed responses have no ETag.
+        return Mono.fromCallable(() -> findByProductId(productId, afterReviewId, limit, content))
+                .subscribeOn(scheduler)
+                .flatMapMany(entityList -> ConditionalGetFilter.ifModified(Flux.fromIterable(entityList), page -> etag(page, content)))
+                .map(e -> mapper.entityToApi(e))
+                .map(e -> {e.setServiceAddress(serviceUtil.getServiceAddress()); return e;})
+                .log(null, FINE);
+
+    }
 
-        return asyncFlux(() -> Flux.fromIterable(getByProductId(productId))).log(null, FINE);
+    protected List<ReviewEntity> findByProductId(int productId, int afterReviewId, int limit, boolean content) {
 
+        Pageable page = PageRequest.of(0, limit, Sort.by("reviewId"));
+        return content ?
+                repository.findByProductIdAndReviewIdGreaterThan(productId, afterReviewId, page) :
+                repository.findSummariesByProductIdAndReviewIdGreaterThan(productId, afterReviewId, page);
+    }
+
+    private static String etag(List<ReviewEntity> entityList, boolean content) {
+        ETag etag = new ETag().add(content ? 1 : 0).add(entityList.size());
+        entityList.forEach(e -> etag.add(e.getReviewId()).add(e.getVersion()));
+        return etag.toString();
+    }
+
+    @Override
+    public Flux<Review> getReviewsForProducts(List<Integer> productIds) {
+        if (productIds.isEmpty() || productIds.size() > MAX_BATCH_SIZE) throw new InvalidInputException("Invalid number of productIds: " + productIds.size());
+        productIds.stream().filter(productId -> productId < 1).findFirst().ifPresent(productId -> {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        });
+
+        log.info("Will get reviews for products with ids={}", productIds);
+
+        // One query per product on the jdbcScheduler, run concurrently but emitted in the requested order,
+        // so the reviews of a product arrive together and only a few products are held at a time.
+        // Each product is limited to the first page, as a single product read without a limit
+        return Flux.fromIterable(new LinkedHashSet<>(productIds))
+                .flatMapSequential(productId -> asyncFlux(() -> Flux.fromIterable(getByProductId(productId))), BATCH_QUERY_CONCURRENCY);
     }
 
     protected List<Review> getByProductId(int productId) {
 
-        List<ReviewEntity> entityList = repository.findByProductId(productId);
+        Pageable firstPage = PageRequest.of(0, DEFAULT_PAGE_SIZE, Sort.by("reviewId"));
+        List<ReviewEntity> entityList = repository.findByProductIdAndReviewIdGreaterThan(productId, 0, firstPage);
         List<Review> list = mapper.entityListToApiList(entityList);
         list.forEach(e -> e.setServiceAddress(serviceUtil.getServiceAddress()));
 
-        log.debug("getReviews: response size: {}", list.size());
+        log.debug("getReviewsForProducts: response size for productId {}: {}", productId, list.size());
 
         return list;
     }
@@ -69,8 +128,13 @@ public class ReviewServiceImpl implements ReviewService {
     }
 
     @Override
-    public Review createReview(Review body) {
+    public Mono<Review> createReview(Review body) {
         if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
+
+        return Mono.fromCallable(() -> internalCreateReview(body)).subscribeOn(scheduler);
+    }
+
+    protected Review internalCreateReview(Review body) {
         try {
             ReviewEntity entity = mapper.apiToEntity(body);
             ReviewEntity newEntity = repository.save(entity);
@@ -83,12 +147,44 @@ public class ReviewServiceImpl implements ReviewService {
         }
     }
 
+    @Override
+    public Mono<Boolean> createIfAbsent(Review body) {
+        if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
+
+        return Mono.fromCallable(() -> internalCreateReviewIfAbsent(body)).subscribeOn(scheduler);
+    }
+
+    /**
+     * Looks the review up on the unique index before inserting it, a replayed review costs one read and no exception.
+     * The Hibernate generated ids rule out a native INSERT ... ON DUPLICATE KEY.
+     */
+    protected boolean internalCreateReviewIfAbsent(Review body) {
+        if (repository.existsByProductIdAndReviewId(body.getProductId(), body.getReviewId())) {
+            log.debug("createReviewIfAbsent: the review already exists: {}/{}", body.getProductId(), body.getReviewId());
+            return false;
+        }
+
+        try {
+            repository.save(mapper.apiToEntity(body));
+            log.debug("createReviewIfAbsent: created a review entity: {}/{}", body.getProductId(), body.getReviewId());
+            return true;
+
+        } catch (DataIntegrityViolationException dive) {
+            // Created concurrently since the lookup
+            return false;
+        }
+    }
 
     @Override
-    public void deleteReviews(int productId) {
+    public Mono<Void> deleteReviews(int productId) {
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
 
+        return Mono.fromRunnable(() -> internalDeleteReviews(productId)).subscribeOn(scheduler).then();
+    }
+
+    protected void internalDeleteReviews(int productId) {
         log.debug("deleteReviews: tries to delete reviews for the product with productId: {}", productId);
-        repository.deleteAll(repository.findByProductId(productId));
+        int count = repository.deleteByProductId(productId);
+        log.debug("deleteReviews: deleted {} reviews for the product with productId: {}", count, productId);
     }
 }
@@ -0,0 +1,81 @@
+package com.hoon.msa.core.review;
+
+import com.hoon.api.core.review.Review;
+import com.hoon.msa.core.review.persistence.ReviewEntity;
+import com.hoon.msa.core.review.persistence.ReviewRepository;
+import com.hoon.msa.core.review.services.ReviewBatchWriter;
+import com.hoon.msa.core.review.services.ReviewMapper;
+import com.hoon.util.exceptions.InvalidInputException;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BatchWriterTests {
+
+    private final ReviewRepository repository = mock(ReviewRepository.class);
+    private final ReviewBatchWriter writer = new ReviewBatchWriter(repository, Mappers.getMapper(ReviewMapper.class));
+
+    @Test
+    public void batchIsSavedAtOnce() {
+
+        List<RuntimeException> failures = writer.write(List.of(review(1, 1), review(1, 2)));
+
+        assertNull(failures.get(0));
+        assertNull(failures.get(1));
+        verify(repository).saveAll(any());
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    public void failedBatchFallsBackToSingleInserts() {
+
+        when(repository.saveAll(any())).thenThrow(new DataIntegrityViolationException("Duplicate entry"));
+        when(repository.save(any())).thenAnswer(invocation -> {
+            ReviewEntity entity = invocation.getArgument(0);
+            if (entity.getReviewId() == 2) throw new DataIntegrityViolationException("Duplicate entry");
+            if (entity.getReviewId() == 3) throw new IllegalStateException("Value too long");
+            return entity;
+        });
+
+        List<RuntimeException> failures = writer.write(List.of(review(1, 1), review(1, 2), review(1, 3), review(0, 4), review(1, 5)));
+
+        // Only the failing reviews fail, whatever the exception
+        assertNull(failures.get(0));
+        assertTrue(failures.get(1) instanceof InvalidInputException);
+        assertEquals("Duplicate key, Product Id: 1, Review Id:2", failures.get(1).getMessage());
+        assertTrue(failures.get(2) instanceof IllegalStateException);
+        assertEquals("Invalid productId: 0", failures.get(3).getMessage());
+        assertNull(failures.get(4));
+
+        // The invalid review is not sent to the database
+        verify(repository, times(4)).save(any());
+    }
+
+    @Test
+    public void anyBatchFailureFallsBackToSingleInserts() {
+
+        when(repository.saveAll(any())).thenThrow(new IllegalStateException("Batch statement failed"));
+
+        List<RuntimeException> failures = writer.write(List.of(review(1, 1), review(1, 2)));
+
+        assertNull(failures.get(0));
+        assertNull(failures.get(1));
+        verify(repository, times(2)).save(any());
+    }
+
+    private Review review(int productId, int reviewId) {
+        return new Review(productId, reviewId, "a", "s", "c", "SA");
+    }
+}
@@ -0,0 +1,108 @@
+package com.hoon.msa.core.review;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JdbcExecutorTests {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService threads = Executors.newFixedThreadPool(2);
+    private final JdbcExecutor executor = new JdbcExecutor(threads, 0, "fixed", meterRegistry);
+    private final ThreadPoolExecutor elasticThreads = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void tearDown() {
+        threads.shutdownNow();
+        elasticThreads.shutdownNow();
+    }
+
+    @Test
+    public void tasksOverThePoolSizeAreQueued() throws InterruptedException {
+
+        AtomicInteger running = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(10);
+
+        for (int i = 0; i < 10; i++) {
+            executor.execute(() -> {
+                running.incrementAndGet();
+                started.countDown();
+                await(release);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        // Two tasks hold the threads of the pool, the other eight wait for them
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(2, running.get());
+        assertEquals(8, meterRegistry.get("review.jdbc.queued").gauge().value());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void elasticModeQueuesTasksWithoutAThread() throws InterruptedException {
+
+        JdbcExecutor elastic = new JdbcExecutor(elasticThreads, 2, "elastic", meterRegistry);
+        AtomicInteger running = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(10);
+
+        for (int i = 0; i < 10; i++) {
+            elastic.execute(() -> {
+                running.incrementAndGet();
+                started.countDown();
+                await(release);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        // Two tasks run, the other eight wait without a thread of their own
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(2, running.get());
+        assertEquals(2, elasticThreads.getPoolSize());
+        assertEquals(8, meterRegistry.get("review.jdbc.queued").tag("mode", "elastic").gauge().value());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(10, meterRegistry.get("review.jdbc.wait").tag("mode", "elastic").timer().count());
+    }
+
+    @Test
+    public void waitOfEveryTaskIsRecorded() throws InterruptedException {
+
+        CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            executor.execute(done::countDown);
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, meterRegistry.get("review.jdbc.queued").gauge().value());
+        assertEquals(10, meterRegistry.get("review.jdbc.wait").timer().count());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.hoon.msa.core.review;
+
+import com.hoon.api.core.product.Product;
+import com.hoon.api.core.review.Review;
+import com.hoon.api.event.Event;
+import com.hoon.msa.core.review.persistence.r2dbc.ReactiveReviewRepository;
+import com.hoon.util.messaging.CreateIfAbsent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.http.HttpStatus;
+import org.springframework.integration.channel.AbstractMessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static com.hoon.api.event.Event.Type.CREATE;
+import static com.hoon.api.event.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+// A database of its own: in review-db the JPA tests may have created the reviews table without the AUTO_INCREMENT
+// of schema.sql, whose CREATE TABLE IF NOT EXISTS would then leave it as is
+@ActiveProfiles("r2dbc")
+@SpringBootTest(
+		webEnvironment=RANDOM_PORT,
+		properties = {"logging.level.com.hoon=DEBUG", "spring.r2dbc.url=r2dbc:h2:mem:///review-db-r2dbc"})
+class R2dbcReviewServiceApplicationTests {
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private ReactiveReviewRepository repository;
+
+	@Autowired
+	private Sink channels;
+
+	@Autowired
+	private CreateIfAbsent<Review> creator;
+
+	private AbstractMessageChannel input = null;
+
+	@BeforeEach
+	public void setupDb() {
+		input = (AbstractMessageChannel) channels.input();
+		repository.deleteAll().block();
+	}
+
+	@Test
+	public void getReviewsByProductIdPaged() {
+
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 1);
+		sendCreateReviewEvent(productId, 2);
+		sendCreateReviewEvent(productId, 3);
+
+		assertEquals(3, repository.findByProductId(productId).count().block());
+
+		getAndVerifyReviews("?productId=" + productId + "&limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[1].reviewId").isEqualTo(2);
+
+		getAndVerifyReviews("?productId=" + productId + "&afterReviewId=2&limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].productId").isEqualTo(productId)
+				.jsonPath("$[0].reviewId").isEqualTo(3);
+	}
+
+	@Test
+	public void getReviewsWithoutContent() {
+
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 1);
+		sendCreateReviewEvent(productId, 2);
+
+		getAndVerifyReviews("?productId=" + productId + "&afterReviewId=1&content=false", OK)
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].reviewId").isEqualTo(2)
+				.jsonPath("$[0].author").isEqualTo("Author 2")
+				.jsonPath("$[0].content").doesNotExist();
+	}
+
+	@Test
+	public void getReviewsNotModified() {
+
+		int productId = 1;
+		sendCreateReviewEvent(productId, 1);
+		sendCreateReviewEvent(productId, 2);
+
+		String etag = client.get()
+				.uri("/review?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().exists("ETag")
+				.returnResult(String.class)
+				.getResponseHeaders().getETag();
+
+		client.get()
+				.uri("/review?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.ifNoneMatch(etag)
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectBody().isEmpty();
+
+		// A new review changes the ETag
+		sendCreateReviewEvent(productId, 3);
+
+		client.get()
+				.uri("/review?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.ifNoneMatch(etag)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(3);
+	}
+
+	@Test
+	public void getReviewsForProducts() {
+
+		sendCreateReviewEvent(1, 1);
+		sendCreateReviewEvent(1, 2);
+		sendCreateReviewEvent(2, 1);
+		sendCreateReviewEvent(3, 1);
+
+		// Grouped by product in the requested order
+		client.get()
+				.uri("/review/batch?productIds=2,1")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(3)
+				.jsonPath("$[0].productId").isEqualTo(2)
+				.jsonPath("$[1].productId").isEqualTo(1)
+				.jsonPath("$[2].productId").isEqualTo(1);
+	}
+
+	@Test
+	public void duplicateError() {
+
+		sendCreateReviewEvent(1, 1);
+
+		assertThrows(MessagingException.class, () -> sendCreateReviewEvent(1, 1));
+
+		assertEquals(1, repository.count().block());
+	}
+
+	@Test
+	public void createIfAbsent() {
+
+		assertTrue(creator.createIfAbsent(new Review(1, 1, "Author 1", "Subject 1", "Content 1", "SA")).block());
+		assertFalse(creator.createIfAbsent(new Review(1, 1, "Author 2", "Subject 2", "Content 2", "SA")).block());
+
+		assertEquals(1, repository.count().block());
+	}
+
+	@Test
+	public void deleteReviews() {
+
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 1);
+		sendCreateReviewEvent(productId, 2);
+		assertEquals(2, repository.findByProductId(productId).count().block());
+
+		sendDeleteReviewEvent(productId);
+		assertEquals(0, repository.findByProductId(productId).count().block());
+
+		sendDeleteReviewEvent(productId);
+	}
+
+	private WebTestClient.BodyContentSpec getAndVerifyReviews(String query, HttpStatus expectedStatus) {
+		return client.get()
+				.uri("/review" + query)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody();
+	}
+
+	private void sendCreateReviewEvent(int productId, int reviewId) {
+		Review review = new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
+		Event<Integer, Product> event = new Event(CREATE, productId, review);
+		input.send(new GenericMessage<>(event));
+	}
+
+	private void sendDeleteReviewEvent(int productId) {
+		Event<Integer, Product> event = new Event(DELETE, productId, null);
+		input.send(new GenericMessage<>(event));
+	}
+}
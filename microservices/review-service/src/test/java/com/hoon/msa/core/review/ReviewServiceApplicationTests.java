@@ -1,9 +1,12 @@
 package com.hoon.msa.core.review;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.hoon.api.core.product.Product;
 import com.hoon.api.core.review.Review;
 import com.hoon.api.event.Event;
 import com.hoon.msa.core.review.persistence.ReviewRepository;
+import com.hoon.util.messaging.CreateIfAbsent;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
@@ -11,18 +14,27 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.stream.messaging.Sink;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.integration.channel.AbstractMessageChannel;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.support.GenericMessage;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.util.List;
+
 import static com.hoon.api.event.Event.Type.CREATE;
 import static com.hoon.api.event.Event.Type.DELETE;
+import static com.hoon.util.messaging.EventMessageConverters.APPLICATION_CBOR;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
 import static reactor.core.publisher.Mono.just;
 
 @RunWith(SpringRunner.class)
@@ -39,6 +51,12 @@ class ReviewServiceApplicationTests {
 	@Autowired
 	private Sink channels;
 
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private CreateIfAbsent<Review> creator;
+
 	private AbstractMessageChannel input = null;
 
 	@BeforeEach
@@ -69,6 +87,186 @@ class ReviewServiceApplicationTests {
 				.jsonPath("$[2].reviewId").isEqualTo(3);
 	}
 
+	@Test
+	public void getReviewsByProductIdPaged() {
+
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 1);
+		sendCreateReviewEvent(productId, 2);
+		sendCreateReviewEvent(productId, 3);
+
+		getAndVerifyReviewsByProductId("?productId=" + productId + "&limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[1].reviewId").isEqualTo(2);
+
+		getAndVerifyReviewsByProductId("?productId=" + productId + "&afterReviewId=2&limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].reviewId").isEqualTo(3);
+	}
+
+	@Test
+	public void getReviewsWithoutContent() {
+
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 1);
+		sendCreateReviewEvent(productId, 2);
+
+		getAndVerifyReviewsByProductId("?productId=" + productId + "&content=false", OK)
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[1].subject").isEqualTo("Subject 2")
+				.jsonPath("$[1].content").doesNotExist();
+	}
+
+	@Test
+	public void getReviewsInvalidLimit() {
+
+		getAndVerifyReviewsByProductId("?productId=1&limit=1001", UNPROCESSABLE_ENTITY)
+				.jsonPath("$.path").isEqualTo("/review")
+				.jsonPath("$.message").isEqualTo("Invalid limit: 1001");
+	}
+
+	@Test
+	public void getReviewsByProductIdAsNdjson() {
+
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 1);
+		sendCreateReviewEvent(productId, 2);
+
+		List<Review> reviews = client.get()
+				.uri("/review?productId=" + productId)
+				.accept(APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().contentTypeCompatibleWith(APPLICATION_NDJSON)
+				.returnResult(Review.class)
+				.getResponseBody()
+				.collectList()
+				.block();
+
+		assertEquals(2, reviews.size());
+		assertEquals(2, reviews.get(1).getReviewId());
+	}
+
+	@Test
+	public void redeliveredEventIsSkipped() {
+
+		Event<Integer, Review> event = new Event(CREATE, 1, new Review(1, 1, "Author 1", "Subject 1", "Content 1", "SA"));
+		double duplicates = meterRegistry.get("messages.deduplicated").counter().count();
+
+		// Without the deduplication the second delivery fails on the unique index
+		input.send(new GenericMessage<>(event));
+		input.send(new GenericMessage<>(event));
+
+		assertEquals(1, repository.findByProductId(1).size());
+		assertEquals(duplicates + 1, meterRegistry.get("messages.deduplicated").counter().count());
+	}
+
+	@Test
+	public void createIfAbsent() {
+
+		assertTrue(creator.createIfAbsent(new Review(1, 1, "Author 1", "Subject 1", "Content 1", "SA")).block());
+		assertFalse(creator.createIfAbsent(new Review(1, 1, "Author 2", "Subject 2", "Content 2", "SA")).block());
+
+		// The existing review is left as is
+		assertEquals(1, repository.findByProductId(1).size());
+		assertEquals("Author 1", repository.findByProductId(1).get(0).getAuthor());
+	}
+
+	@Test
+	public void getReviewsNotModified() {
+
+		int productId = 1;
+		sendCreateReviewEvent(productId, 1);
+		sendCreateReviewEvent(productId, 2);
+
+		String etag = client.get()
+				.uri("/review?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().exists("ETag")
+				.returnResult(String.class)
+				.getResponseHeaders().getETag();
+
+		client.get()
+				.uri("/review?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.ifNoneMatch(etag)
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectBody().isEmpty();
+
+		// A new review changes the ETag
+		sendCreateReviewEvent(productId, 3);
+
+		client.get()
+				.uri("/review?productId=" + productId)
+				.accept(APPLICATION_JSON)
+				.ifNoneMatch(etag)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(3);
+	}
+
+	@Test
+	public void getReviewsForProducts() {
+
+		sendCreateReviewEvent(1, 1);
+		sendCreateReviewEvent(1, 2);
+		sendCreateReviewEvent(2, 1);
+		sendCreateReviewEvent(3, 1);
+
+		// Grouped by product in the requested order
+		client.get()
+				.uri("/review/batch?productIds=2,1")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(3)
+				.jsonPath("$[0].productId").isEqualTo(2)
+				.jsonPath("$[1].productId").isEqualTo(1)
+				.jsonPath("$[2].productId").isEqualTo(1);
+	}
+
+	@Test
+	public void getReviewsForProductsIsLimitedPerProduct() {
+
+		for (int reviewId = 1; reviewId <= 101; reviewId++) sendCreateReviewEvent(1, reviewId);
+		sendCreateReviewEvent(2, 1);
+
+		// The first page of the single product read, 100 reviews, of each product
+		client.get()
+				.uri("/review/batch?productIds=1,2")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(101)
+				.jsonPath("$[99].productId").isEqualTo(1)
+				.jsonPath("$[99].reviewId").isEqualTo(100)
+				.jsonPath("$[100].productId").isEqualTo(2);
+	}
+
+	@Test
+	public void createReviewFromCborEvent() throws JsonProcessingException {
+
+		int productId = 1;
+		Review review = new Review(productId, 1, "Author 1", "Subject 1", "Content 1", "SA");
+		byte[] payload = Jackson2ObjectMapperBuilder.cbor().build().writeValueAsBytes(new Event(CREATE, productId, review));
+
+		// Decoded by the CBOR converter according to the content type header
+		input.send(MessageBuilder.withPayload(payload).setHeader(MessageHeaders.CONTENT_TYPE, APPLICATION_CBOR).build());
+
+		assertEquals(1, repository.findByProductId(productId).size());
+		assertEquals("Subject 1", repository.findByProductId(productId).get(0).getSubject());
+	}
+
 //	@Test
 //	public void duplicateError() {
 //
@@ -0,0 +1,158 @@
+package com.hoon.util.batch;
+
+import com.hoon.util.exceptions.EventProcessingException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit of items submitted by concurrent message listener threads.
+ *
+ * The first thread that submits an item opens a batch. If no other batch is being written it writes the batch
+ * at once, waiting would only add latency. Else the items submitted meanwhile join the batch until it holds
+ * maxBatchSize items, the batches being written are done or maxWait has passed, then the whole batch is written
+ * with one call to the {@link BatchWriter}.
+ * Every submitting thread blocks until its batch is written and gets the outcome of its own item only,
+ * so a failing item is thrown back to its own listener (and from there retried or routed to the DLQ)
+ * without failing the rest of the batch.
+ *
+ * Batches can never grow larger than the number of submitting threads, e.g. the binding's consumer concurrency.
+ */
+@Slf4j
+public class EventBatcher<T> {
+
+    public interface BatchWriter<T> {
+
+        /**
+         * @param items
+         * @return one entry per item, in the same order: null if the item was written, else the failure
+         */
+        List<RuntimeException> write(List<T> items);
+    }
+
+    private static class Batch<T> {
+        private final List<T> items = new ArrayList<>();
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final CountDownLatch written = new CountDownLatch(1);
+        private List<RuntimeException> failures;
+    }
+
+    private final BatchWriter<T> writer;
+    private final int maxBatchSize;
+    private final Duration maxWait;
+
+    private Batch<T> current = null;
+    // Batches closed and not yet written
+    private int writing = 0;
+
+    public EventBatcher(BatchWriter<T> writer, int maxBatchSize, Duration maxWait) {
+        if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize must be at least 1, was: " + maxBatchSize);
+
+        this.writer = writer;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Adds the item to the open batch and blocks until that batch is written.
+     *
+     * @param item
+     * @throws RuntimeException the failure reported by the writer for this item
+     */
+    public void submit(T item) {
+        Batch<T> batch;
+        int index;
+
+        synchronized (this) {
+            if (current == null) current = new Batch<>();
+            batch = current;
+            index = batch.items.size();
+            batch.items.add(item);
+
+            if (batch.items.size() >= maxBatchSize || writing == 0) close(batch);
+        }
+
+        if (index == 0) {
+            awaitUninterruptibly(batch.closed, maxWait);
+            synchronized (this) {
+                if (current == batch) close(batch);
+            }
+            write(batch);
+        } else {
+            awaitUninterruptibly(batch.written, null);
+        }
+
+        RuntimeException failure = batch.failures.get(index);
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * @return the number of items in the open batch
+     */
+    synchronized int openItems() {
+        return (current == null) ? 0 : current.items.size();
+    }
+
+    /**
+     * Call holding the lock. No more items join the batch, its opener writes it.
+     */
+    private void close(Batch<T> batch) {
+        current = null;
+        writing++;
+        batch.closed.countDown();
+    }
+
+    private void write(Batch<T> batch) {
+        int size = batch.items.size();
+        log.debug("Writes a batch of {} items", size);
+        try {
+            List<RuntimeException> failures = writer.write(batch.items);
+            if (failures.size() != size) throw new EventProcessingException("Expected " + size + " batch results, got: " + failures.size());
+            batch.failures = failures;
+        } catch (RuntimeException ex) {
+            log.warn("Batch write of {} items failed: {}", size, ex.toString());
+            batch.failures = Collections.nCopies(size, ex);
+        } finally {
+            if (batch.failures == null) {
+                batch.failures = Collections.nCopies(size, new EventProcessingException("Batch write failed"));
+            }
+            batch.written.countDown();
+
+            // The items that arrived during the write are written next
+            synchronized (this) {
+                writing--;
+                if (writing == 0 && current != null) close(current);
+            }
+        }
+    }
+
+    /**
+     * Waits for the latch without giving up on interrupts, a batch must always be written and handed back
+     * to all of its submitters. The interrupt flag is restored before returning.
+     */
+    private static void awaitUninterruptibly(CountDownLatch latch, Duration timeout) {
+        boolean interrupted = false;
+        long deadline = (timeout == null) ? 0 : System.nanoTime() + timeout.toNanos();
+        try {
+            while (true) {
+                try {
+                    if (timeout == null) {
+                        latch.await();
+                    } else {
+                        latch.await(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                    }
+                    return;
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.hoon.util.batch;
+
+import com.hoon.util.exceptions.EventProcessingException;
+import com.hoon.util.exceptions.InvalidInputException;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Inserts a batch of items with a single unordered insertMany into the collection of their entity.
+ * A duplicate or otherwise failing document only fails its own item, the rest of the batch is still inserted.
+ */
+@Slf4j
+public abstract class MongoBatchWriter<T, E> implements EventBatcher.BatchWriter<T> {
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final Class<E> entityClass;
+
+    protected MongoBatchWriter(ReactiveMongoTemplate mongoTemplate, Class<E> entityClass) {
+        this.mongoTemplate = mongoTemplate;
+        this.entityClass = entityClass;
+    }
+
+    /**
+     * @return the productId of the item, items with an invalid productId are not inserted
+     */
+    protected abstract int productId(T item);
+
+    /**
+     * @return a new entity of the item, as it is inserted, i.e. with version 0
+     */
+    protected abstract E toEntity(T item);
+
+    /**
+     * @return the unique key of the item for the failure messages, e.g. "Product Id: 1"
+     */
+    protected abstract String key(T item);
+
+    @Override
+    public List<RuntimeException> write(List<T> items) {
+        List<RuntimeException> failures = new ArrayList<>(Collections.nCopies(items.size(), null));
+
+        // Invalid items are reported as failed without being sent to the database
+        List<Integer> validIndexes = new ArrayList<>();
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            T item = items.get(i);
+            if (productId(item) < 1) {
+                failures.set(i, new InvalidInputException("Invalid productId: " + productId(item)));
+            } else {
+                validIndexes.add(i);
+                documents.add(toDocument(item));
+            }
+        }
+        if (documents.isEmpty()) return failures;
+
+        try {
+            mongoTemplate.execute(entityClass, collection -> collection.insertMany(documents, new InsertManyOptions().ordered(false)))
+                    .then()
+                    .block();
+
+        } catch (RuntimeException ex) {
+            MongoBulkWriteException bulkException = findBulkWriteException(ex);
+            if (bulkException == null) throw ex;
+
+            for (BulkWriteError error : bulkException.getWriteErrors()) {
+                int index = validIndexes.get(error.getIndex());
+                T item = items.get(index);
+                failures.set(index, (error.getCode() == DUPLICATE_KEY_ERROR) ?
+                        new InvalidInputException("Duplicate key, " + key(item)) :
+                        new EventProcessingException("Failed to insert " + key(item) + ": " + error.getMessage()));
+            }
+        }
+
+        log.debug("write: inserted {} of {} {}", failures.stream().filter(f -> f == null).count(), items.size(), entityClass.getSimpleName());
+        return failures;
+    }
+
+    private Document toDocument(T item) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(toEntity(item), document);
+        return document;
+    }
+
+    private static MongoBulkWriteException findBulkWriteException(Throwable ex) {
+        while (ex != null && !(ex instanceof MongoBulkWriteException)) ex = ex.getCause();
+        return (MongoBulkWriteException) ex;
+    }
+}
@@ -0,0 +1,114 @@
+package com.hoon.util.http;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Conditional GETs for the reactive controllers, whose signatures are given by the API interfaces.
+ *
+ * The filter makes the exchange available to {@link #ifModified(String, Mono)} and {@link #ifModified(String, Flux)}:
+ * they set the ETag of the response and, if it matches the If-None-Match of the request, answer 304 Not Modified
+ * and complete empty instead of emitting the body. Whatever the encoder still writes for an empty body,
+ * e.g. "[]" for a Flux, is dropped from a 304 response.
+ *
+ * For a page whose ETag covers all of its elements, {@link #ifModified(Flux, Function)} only collects the page for a
+ * JSON response. Streamed responses (NDJSON, server-sent events) are passed on as the page is read, without an ETag.
+ *
+ * Outside of a request, e.g. when a service is called directly, the body is always emitted.
+ */
+@Component
+public class ConditionalGetFilter implements WebFilter {
+    private static final String EXCHANGE_CONTEXT_KEY = ConditionalGetFilter.class.getName() + ".EXCHANGE";
+    private static final List<MediaType> STREAMING_MEDIA_TYPES = List.of(MediaType.APPLICATION_NDJSON, MediaType.TEXT_EVENT_STREAM);
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpResponseDecorator response = new ServerHttpResponseDecorator(exchange.getResponse()) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                return notModified() ? discard(body) : super.writeWith(body);
+            }
+
+            @Override
+            public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+                return notModified() ? discard(Flux.from(body).<DataBuffer>flatMap(part -> part)) : super.writeAndFlushWith(body);
+            }
+
+            private boolean notModified() {
+                return getStatusCode() == HttpStatus.NOT_MODIFIED;
+            }
+
+            private Mono<Void> discard(Publisher<? extends DataBuffer> body) {
+                return Flux.from(body).doOnNext(DataBufferUtils::release).then(setComplete());
+            }
+        };
+
+        ServerWebExchange decorated = exchange.mutate().response(response).build();
+        return chain.filter(decorated).contextWrite(context -> context.put(EXCHANGE_CONTEXT_KEY, decorated));
+    }
+
+    /**
+     * @param etag the current entity tag of the resource
+     * @return the body, or empty with a 304 response if the client already has this version
+     */
+    public static <T> Mono<T> ifModified(String etag, Mono<T> body) {
+        return notModified(etag).flatMap(notModified -> notModified ? Mono.empty() : body);
+    }
+
+    public static <T> Flux<T> ifModified(String etag, Flux<T> body) {
+        return notModified(etag).flatMapMany(notModified -> notModified ? Flux.empty() : body);
+    }
+
+    /**
+     * @param etag the entity tag of a page, computed from all of its elements
+     * @return the page, or empty with a 304 response if the client already has this version. Collected to compute
+     * the ETag only for a response that is not streamed, outside of a request the page is passed on as it is.
+     */
+    public static <T> Flux<T> ifModified(Flux<T> page, Function<List<T>, String> etag) {
+        return conditional().flatMapMany(conditional -> !conditional ? page
+                : page.collectList().flatMapMany(list -> ifModified(etag.apply(list), Flux.fromIterable(list))));
+    }
+
+    private static Mono<Boolean> conditional() {
+        return Mono.deferContextual(context -> {
+            Optional<ServerWebExchange> exchange = context.getOrEmpty(EXCHANGE_CONTEXT_KEY);
+            return Mono.just(exchange.map(e -> !isStreamed(e)).orElse(false));
+        });
+    }
+
+    /**
+     * The content type is selected before the body is subscribed, the Accept header is the fallback if it is not set
+     */
+    private static boolean isStreamed(ServerWebExchange exchange) {
+        MediaType contentType = exchange.getResponse().getHeaders().getContentType();
+        if (contentType != null) return isStreaming(contentType);
+
+        List<MediaType> accept = exchange.getRequest().getHeaders().getAccept();
+        return !accept.isEmpty() && accept.stream().allMatch(ConditionalGetFilter::isStreaming);
+    }
+
+    private static boolean isStreaming(MediaType mediaType) {
+        return STREAMING_MEDIA_TYPES.stream().anyMatch(mediaType::equalsTypeAndSubtype);
+    }
+
+    private static Mono<Boolean> notModified(String etag) {
+        return Mono.deferContextual(context -> {
+            Optional<ServerWebExchange> exchange = context.getOrEmpty(EXCHANGE_CONTEXT_KEY);
+            return Mono.just(exchange.map(e -> e.checkNotModified(etag)).orElse(false));
+        });
+    }
+}
@@ -0,0 +1,48 @@
+package com.hoon.util.http;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds a strong entity tag from the parts that identify the state of a resource, e.g. the keys and versions
+ * of the entities in a response, as a 64 bit FNV-1a hash. Add the parts in a fixed order.
+ */
+public class ETag {
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private long hash = OFFSET_BASIS;
+
+    public ETag add(long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= PRIME;
+        }
+        return this;
+    }
+
+    /**
+     * @param value may be null, e.g. the version of an entity written before it had one
+     */
+    public ETag add(Integer value) {
+        return (value == null) ? add(Long.MIN_VALUE) : add((long) value);
+    }
+
+    public ETag add(String value) {
+        if (value == null) return add(Long.MIN_VALUE);
+
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= PRIME;
+        }
+        // Separates consecutive strings
+        return add(value.length());
+    }
+
+    /**
+     * @return the quoted entity tag
+     */
+    @Override
+    public String toString() {
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+}
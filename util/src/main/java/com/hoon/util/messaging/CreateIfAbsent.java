@@ -0,0 +1,15 @@
+package com.hoon.util.messaging;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Creates an entity unless one with the same key exists, without relying on a duplicate key exception.
+ */
+public interface CreateIfAbsent<T> {
+
+    /**
+     * @param item
+     * @return true if the entity was created, false if it already existed
+     */
+    Mono<Boolean> createIfAbsent(T item);
+}
@@ -0,0 +1,18 @@
+package com.hoon.util.messaging;
+
+/**
+ * How the CREATE events of a binding are written, set with app.bindings.&lt;binding&gt;.create-mode.
+ */
+public enum CreateMode {
+
+    /**
+     * Plain insert, a duplicate fails the event on the unique index and is retried and dead lettered.
+     */
+    INSERT,
+
+    /**
+     * Insert unless the entity already exists, an existing entity is left as is and the event succeeds,
+     * see {@link CreateIfAbsent}. Suited to replays and imports.
+     */
+    INSERT_IF_ABSENT
+}
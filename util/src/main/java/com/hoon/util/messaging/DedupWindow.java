@@ -0,0 +1,109 @@
+package com.hoon.util.messaging;
+
+/**
+ * The last capacity event ids, as primitive longs: a ring buffer in arrival order, to evict the oldest id,
+ * and an open addressing hash set with linear probing, to look them up. 0 is not a valid id.
+ */
+class DedupWindow {
+    private static final long EMPTY = 0;
+
+    private final long[] ring;
+    private int next = 0;
+    private int size = 0;
+
+    private final long[] table;
+    private final int mask;
+
+    DedupWindow(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1, was: " + capacity);
+
+        this.ring = new long[capacity];
+
+        // At most half full, keeps the probe sequences short
+        int tableSize = 2;
+        while (tableSize < capacity * 2) tableSize <<= 1;
+        this.table = new long[tableSize];
+        this.mask = tableSize - 1;
+    }
+
+    synchronized boolean contains(long id) {
+        return id != EMPTY && table[slot(id)] == id;
+    }
+
+    /**
+     * Adds the id, evicts the oldest id if the window is full.
+     *
+     * @return false if the id already is in the window
+     */
+    synchronized boolean add(long id) {
+        if (id == EMPTY) throw new IllegalArgumentException("0 is not a valid id");
+
+        int slot = slot(id);
+        if (table[slot] == id) return false;
+
+        if (size == ring.length) {
+            remove(ring[next]);
+            // The removal may have shifted the free slot
+            slot = slot(id);
+        } else {
+            size++;
+        }
+        table[slot] = id;
+        ring[next] = id;
+        next = (next + 1) % ring.length;
+        return true;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the ids in the window, oldest first
+     */
+    synchronized long[] ids() {
+        long[] ids = new long[size];
+        int first = (size == ring.length) ? next : 0;
+        for (int i = 0; i < size; i++) ids[i] = ring[(first + i) % ring.length];
+        return ids;
+    }
+
+    /**
+     * @return the slot of the id, or the free slot where it would be added
+     */
+    private int slot(long id) {
+        int slot = hash(id);
+        while (table[slot] != EMPTY && table[slot] != id) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    // Package private for the tests
+    int hash(long id) {
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Removes the id and shifts the following ids of its probe sequence back, so no lookup stops at the hole.
+     */
+    private void remove(long id) {
+        int hole = slot(id);
+        if (table[hole] != id) return;
+        table[hole] = EMPTY;
+
+        int slot = hole;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long moved = table[slot];
+            if (moved == EMPTY) return;
+
+            // Leave ids whose home slot lies cyclically in (hole, slot]
+            int home = hash(moved);
+            boolean reachable = (hole <= slot) ? (hole < home && home <= slot) : (hole < home || home <= slot);
+            if (reachable) continue;
+
+            table[hole] = moved;
+            table[slot] = EMPTY;
+            hole = slot;
+        }
+    }
+}
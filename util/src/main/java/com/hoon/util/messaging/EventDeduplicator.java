@@ -0,0 +1,144 @@
+package com.hoon.util.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+
+/**
+ * Remembers the ids of the last processed events, so a redelivered event (after a retry, a nack or a consumer restart)
+ * is skipped before it reaches the database instead of failing on a unique index.
+ *
+ * The window holds the last app.event-dedup.window-size event ids, 8 bytes each plus the hash table.
+ * With app.event-dedup.snapshot-file the window is saved to that file every app.event-dedup.snapshot-interval and on
+ * shutdown, and loaded from it on startup, so it also covers the redeliveries after a restart. After a crash the ids
+ * processed since the last snapshot are lost, their redeliveries fall back on the unique indexes.
+ * Events without an id (0) are never skipped.
+ *
+ * Skipped events are counted as messages.deduplicated, the number of ids in the window is messages.dedup.window.
+ *
+ * Not a component, only the services that process events import it (@Import on their application class), the others
+ * do not allocate the window or register its meters.
+ */
+@Slf4j
+public class EventDeduplicator implements InitializingBean, DisposableBean {
+
+    private final boolean enabled;
+    private final String snapshotFile;
+    private final Duration snapshotInterval;
+    private final DedupWindow window;
+    private final Counter duplicates;
+
+    private Scheduler snapshotScheduler;
+    private Disposable snapshots;
+
+    @Autowired
+    public EventDeduplicator(MeterRegistry meterRegistry,
+                             @Value("${app.event-dedup.enabled:true}") boolean enabled,
+                             @Value("${app.event-dedup.window-size:100000}") int windowSize,
+                             @Value("${app.event-dedup.snapshot-file:}") String snapshotFile,
+                             @Value("${app.event-dedup.snapshot-interval:60s}") Duration snapshotInterval) {
+        this.enabled = enabled;
+        this.snapshotFile = snapshotFile;
+        this.snapshotInterval = snapshotInterval;
+        this.window = new DedupWindow(windowSize);
+
+        this.duplicates = Counter.builder("messages.deduplicated")
+                .description("Redelivered events that were skipped")
+                .register(meterRegistry);
+        Gauge.builder("messages.dedup.window", window, DedupWindow::size)
+                .description("Event ids in the deduplication window")
+                .register(meterRegistry);
+
+        if (enabled) log.info("Deduplicates events over the last {} event ids, snapshot file: '{}', every {}", windowSize, snapshotFile, snapshotInterval);
+    }
+
+    /**
+     * @return true if the event already has been processed, counted as a duplicate
+     */
+    public boolean isDuplicate(long eventId) {
+        if (!enabled || !window.contains(eventId)) return false;
+
+        duplicates.increment();
+        return true;
+    }
+
+    /**
+     * Call once the event is processed, not before, a failed event must be processed again when it is redelivered.
+     */
+    public void processed(long eventId) {
+        if (enabled && eventId != 0) window.add(eventId);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!enabled || snapshotFile.isEmpty()) return;
+
+        load();
+
+        // The snapshots are written off the listener threads, a slow disk does not hold up the processing
+        snapshotScheduler = Schedulers.newSingle("event-dedup-snapshot", true);
+        snapshots = Flux.interval(snapshotInterval, snapshotScheduler)
+                .subscribe(tick -> save());
+    }
+
+    @Override
+    public void destroy() {
+        if (!enabled || snapshotFile.isEmpty()) return;
+
+        snapshots.dispose();
+        snapshotScheduler.dispose();
+        save();
+    }
+
+    private void load() {
+        Path path = Paths.get(snapshotFile);
+        if (!Files.exists(path)) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) window.add(in.readLong());
+            log.info("Loaded {} event ids from {}", count, path);
+        } catch (IOException ioe) {
+            log.warn("Failed to load the event ids from {}, starts with an empty window: {}", path, ioe.toString());
+        }
+    }
+
+    // Synchronized, the last snapshot on shutdown may overlap with a periodic one
+    synchronized void save() {
+        Path path = Paths.get(snapshotFile);
+        Path tmp = Paths.get(snapshotFile + ".tmp");
+        long[] ids = window.ids();
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(ids.length);
+                for (long id : ids) out.writeLong(id);
+            }
+            // Never leaves a half written snapshot behind
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Saved {} event ids to {}", ids.length, path);
+        } catch (IOException ioe) {
+            log.warn("Failed to save the event ids to {}: {}", path, ioe.toString());
+        }
+    }
+}
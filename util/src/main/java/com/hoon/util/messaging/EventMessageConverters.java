@@ -0,0 +1,37 @@
+package com.hoon.util.messaging;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.util.MimeType;
+
+/**
+ * Binary encoding of the events as CBOR, selected per binding with contentType: application/cbor.
+ *
+ * The converter is registered in every service, a consumer decodes the events according to the contentType header
+ * of each message, so JSON and CBOR messages can be mixed on a destination. Migrate the consumers first, then switch
+ * the producer bindings (see the cbor-events profile of the composite service), and the other way round to go back.
+ *
+ * CBOR keeps the JSON data model and field names, so the rules for evolving the events are the same as for JSON:
+ * fields may be added, unknown fields are ignored by the readers and missing fields get their default values,
+ * but fields must not be renamed or change type.
+ */
+@Configuration
+public class EventMessageConverters {
+
+    public static final MimeType APPLICATION_CBOR = MimeType.valueOf("application/cbor");
+
+    @Bean
+    public MessageConverter cborMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+        // Boot's builder, a new one per injection point, so the spring.jackson.* settings of the JSON ObjectMapper
+        // apply to CBOR as well
+        converter.setObjectMapper(builder.factory(new CBORFactory()).build());
+        // Only messages with the CBOR content type, JSON messages are left to the JSON converter
+        converter.setStrictContentTypeMatch(true);
+        return converter;
+    }
+}
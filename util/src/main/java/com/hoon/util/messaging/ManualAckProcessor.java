@@ -0,0 +1,195 @@
+package com.hoon.util.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.MessageHeaders;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Processes the messages of a RabbitMQ binding in MANUAL acknowledge mode without blocking the listener thread.
+ *
+ * The exclusive messages of one key, e.g. the deletes of a productId, are processed in the order they were received
+ * relative to all other messages of the key. The shared messages between two exclusive ones, e.g. the creates of
+ * different entities of the product, are processed concurrently, and so are the messages of different keys. A failed processing is retried, then the event is republished
+ * to the dead letter queue as JSON, with the same x-exception-* and x-original-* headers as the binder's
+ * republishToDlq, and the message is acked.
+ *
+ * The channel is never used concurrently: acks and republishes are done on a single thread.
+ */
+@Slf4j
+public class ManualAckProcessor {
+    private static final int MAX_STACKTRACE_LENGTH = 10000;
+
+    private final Retry retry;
+    private final ObjectMapper mapper;
+    private final String deadLetterExchange;
+    private final String deadLetterRoutingKey;
+    private final Scheduler channelScheduler;
+
+    // The messages of each key that are not done yet, the entry is removed when all of them are done
+    private final Map<Object, KeyState> keys = new HashMap<>();
+
+    private static class KeyState {
+        // The last exclusive message, and the shared messages received after it
+        private CompletableFuture<Void> lastExclusive;
+        private List<CompletableFuture<Void>> sharedSince = new ArrayList<>();
+        private int pending;
+    }
+
+    private interface ChannelAction {
+        void run(Channel channel, long deliveryTag) throws IOException;
+    }
+
+    public ManualAckProcessor(String name, Retry retry, ObjectMapper mapper, String deadLetterExchange, String deadLetterRoutingKey) {
+        this.retry = retry;
+        this.mapper = mapper;
+        this.deadLetterExchange = deadLetterExchange;
+        this.deadLetterRoutingKey = deadLetterRoutingKey;
+        this.channelScheduler = Schedulers.newSingle(name + "-ack", true);
+    }
+
+    /**
+     * @return true if the message came with a channel to ack on, i.e. from a RabbitMQ binding in MANUAL acknowledge mode
+     */
+    public static boolean isManualAck(MessageHeaders headers) {
+        return headers.get(AmqpHeaders.CHANNEL) instanceof Channel && headers.get(AmqpHeaders.DELIVERY_TAG) != null;
+    }
+
+    /**
+     * Acks a message that needs no processing, e.g. a redelivered event.
+     */
+    public void acknowledge(MessageHeaders headers) {
+        onChannel(headers, (channel, deliveryTag) -> channel.basicAck(deliveryTag, false));
+    }
+
+    /**
+     * Processes an exclusive message, see {@link #process(Object, boolean, Object, Mono, MessageHeaders)}.
+     */
+    public void process(Object key, Object event, Mono<Void> processing, MessageHeaders headers) {
+        process(key, true, event, processing, headers);
+    }
+
+    /**
+     * Call on the listener thread, in the order the messages are received.
+     *
+     * @param key the messages with the same key are processed in order, as far as they are exclusive
+     * @param exclusive true to wait for all earlier messages of the key and let all later ones wait for this one,
+     *                  false to only wait for the earlier exclusive message of the key
+     * @param event republished to the dead letter queue if the processing fails
+     * @param processing subscribed to once the messages it waits for are done, again for each retry
+     */
+    public void process(Object key, boolean exclusive, Object event, Mono<Void> processing, MessageHeaders headers) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous = waitFor(key, exclusive, done);
+
+        Mono<Void> attempts = processing.retryWhen(retry);
+
+        // Completes whether the previous messages succeeded or were dead lettered
+        ((previous == null) ? attempts : Mono.fromFuture(previous).then(attempts))
+                .doFinally(signal -> {
+                    done(key);
+                    done.complete(null);
+                })
+                .subscribe(
+                        null,
+                        error -> {
+                            Throwable cause = Exceptions.isRetryExhausted(error) ? error.getCause() : error;
+                            log.warn("Message processing failed, republishes it to the DLQ: {}", cause.toString());
+                            onChannel(headers, (channel, deliveryTag) -> deadLetter(channel, deliveryTag, event, cause, headers));
+                        },
+                        () -> {
+                            onChannel(headers, (channel, deliveryTag) -> channel.basicAck(deliveryTag, false));
+                            log.info("Message processing done!");
+                        });
+    }
+
+    /**
+     * @return completes when the messages the given one has to wait for are done, null if there are none
+     */
+    private CompletableFuture<Void> waitFor(Object key, boolean exclusive, CompletableFuture<Void> done) {
+        synchronized (keys) {
+            KeyState state = keys.computeIfAbsent(key, k -> new KeyState());
+            state.pending++;
+            state.sharedSince.removeIf(CompletableFuture::isDone);
+            if (state.lastExclusive != null && state.lastExclusive.isDone()) state.lastExclusive = null;
+
+            if (!exclusive) {
+                state.sharedSince.add(done);
+                return state.lastExclusive;
+            }
+
+            List<CompletableFuture<Void>> previous = state.sharedSince;
+            if (state.lastExclusive != null) previous.add(state.lastExclusive);
+            state.lastExclusive = done;
+            state.sharedSince = new ArrayList<>();
+            return previous.isEmpty() ? null : CompletableFuture.allOf(previous.toArray(new CompletableFuture[0]));
+        }
+    }
+
+    private void done(Object key) {
+        synchronized (keys) {
+            KeyState state = keys.get(key);
+            if (--state.pending == 0) keys.remove(key);
+        }
+    }
+
+    private void deadLetter(Channel channel, long deliveryTag, Object event, Throwable cause, MessageHeaders headers) throws IOException {
+        Map<String, Object> amqpHeaders = new HashMap<>();
+        amqpHeaders.put("x-exception-message", String.valueOf(cause.getMessage()));
+        amqpHeaders.put("x-exception-stacktrace", stackTrace(cause));
+        amqpHeaders.put("x-original-exchange", String.valueOf(headers.get(AmqpHeaders.RECEIVED_EXCHANGE)));
+        amqpHeaders.put("x-original-routingKey", String.valueOf(headers.get(AmqpHeaders.RECEIVED_ROUTING_KEY)));
+
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .contentType("application/json")
+                .deliveryMode(2)
+                .headers(amqpHeaders)
+                .build();
+
+        try {
+            channel.basicPublish(deadLetterExchange, deadLetterRoutingKey, properties, mapper.writeValueAsBytes(event));
+        } catch (IOException ioe) {
+            // Still dead lettered by the queue, without the exception headers
+            log.warn("Failed to republish message {} to the DLQ, rejects it: {}", deliveryTag, ioe.toString());
+            channel.basicNack(deliveryTag, false, false);
+            return;
+        }
+        channel.basicAck(deliveryTag, false);
+    }
+
+    private void onChannel(MessageHeaders headers, ChannelAction action) {
+        Channel channel = headers.get(AmqpHeaders.CHANNEL, Channel.class);
+        long deliveryTag = headers.get(AmqpHeaders.DELIVERY_TAG, Long.class);
+
+        channelScheduler.schedule(() -> {
+            try {
+                action.run(channel, deliveryTag);
+            } catch (IOException | RuntimeException ex) {
+                log.warn("Failed to acknowledge message {}: {}", deliveryTag, ex.toString());
+            }
+        });
+    }
+
+    private static String stackTrace(Throwable cause) {
+        StringWriter writer = new StringWriter();
+        cause.printStackTrace(new PrintWriter(writer));
+        String stackTrace = writer.toString();
+        return (stackTrace.length() > MAX_STACKTRACE_LENGTH) ? stackTrace.substring(0, MAX_STACKTRACE_LENGTH) : stackTrace;
+    }
+}
@@ -0,0 +1,244 @@
+package com.hoon.util.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hoon.util.exceptions.EventProcessingException;
+import com.hoon.util.exceptions.InvalidInputException;
+import com.hoon.util.messaging.ManualAckProcessor;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.MessageHeaders;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class EventBatcherTests {
+
+    // The batch with item 0 is written when released, the items submitted meanwhile form the next batch
+    private static final int HELD = 0;
+
+    private final List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    public void batchIsWrittenAtOnceIfNothingIsBeingWritten() {
+
+        // maxWait is far longer than the test may take
+        EventBatcher<Integer> batcher = new EventBatcher<>(recording(items -> noFailures(items)), 10, Duration.ofMinutes(1));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> batcher.submit(1));
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> batcher.submit(2));
+        assertEquals(List.of(List.of(1), List.of(2)), batches);
+    }
+
+    @Test
+    public void fullBatchIsWrittenWithoutWaiting() throws Exception {
+
+        // maxWait is far longer than the test may take, only the size can flush the batch
+        EventBatcher<Integer> batcher = new EventBatcher<>(recording(items -> noFailures(items)), 3, Duration.ofMinutes(1));
+        CompletableFuture<Void> held = submitAll(batcher, HELD).get(0);
+        awaitBatches(1);
+
+        List<CompletableFuture<Void>> submits = submitAll(batcher, 1, 2, 3);
+
+        for (CompletableFuture<Void> submit : submits) submit.get(5, TimeUnit.SECONDS);
+        assertEquals(2, batches.size());
+        assertEquals(List.of(1, 2, 3), sorted(batches.get(1)));
+
+        release.countDown();
+        held.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void itemsSubmittedDuringAWriteAreWrittenWhenItIsDone() throws Exception {
+
+        EventBatcher<Integer> batcher = new EventBatcher<>(recording(items -> noFailures(items)), 10, Duration.ofMinutes(1));
+        CompletableFuture<Void> held = submitAll(batcher, HELD).get(0);
+        awaitBatches(1);
+
+        List<CompletableFuture<Void>> submits = submitAll(batcher, 1, 2);
+        awaitOpenItems(batcher, 2);
+        release.countDown();
+
+        held.get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<Void> submit : submits) submit.get(5, TimeUnit.SECONDS);
+        assertEquals(2, batches.size());
+        assertEquals(List.of(1, 2), sorted(batches.get(1)));
+    }
+
+    @Test
+    public void partialBatchIsWrittenAfterMaxWait() throws Exception {
+
+        EventBatcher<Integer> batcher = new EventBatcher<>(recording(items -> noFailures(items)), 10, Duration.ofMillis(50));
+        CompletableFuture<Void> held = submitAll(batcher, HELD).get(0);
+        awaitBatches(1);
+
+        // The held batch is still being written, the next one waits for maxWait at most
+        long start = System.nanoTime();
+        batcher.submit(1);
+
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+        assertEquals(List.of(List.of(HELD), List.of(1)), batches);
+
+        release.countDown();
+        held.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void createsOfOneKeyAreBatched() throws Exception {
+
+        // As the reactive consumer of a core service with batching, the creates of a product do not wait for each other
+        EventBatcher<Integer> batcher = new EventBatcher<>(recording(items -> noFailures(items)), 16, Duration.ofMinutes(1));
+        ManualAckProcessor processor = new ManualAckProcessor("test", Retry.backoff(2, Duration.ofMillis(10)),
+                new ObjectMapper(), "DLX", "reviews.reviewsGroup");
+        Channel channel = mock(Channel.class);
+        int productId = 1;
+
+        processor.process(productId, false, HELD, submitted(batcher, HELD), headers(channel, 1));
+        awaitBatches(1);
+        for (int item = 1; item <= 8; item++) {
+            processor.process(productId, false, item, submitted(batcher, item), headers(channel, item + 1));
+        }
+        awaitOpenItems(batcher, 8);
+        release.countDown();
+
+        for (long deliveryTag = 1; deliveryTag <= 9; deliveryTag++) verify(channel, timeout(5000)).basicAck(deliveryTag, false);
+        assertEquals(2, batches.size());
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8), sorted(batches.get(1)));
+    }
+
+    @Test
+    public void failedItemOnlyFailsItsSubmitter() throws Exception {
+
+        InvalidInputException duplicate = new InvalidInputException("Duplicate key");
+        EventBatcher<Integer> batcher = new EventBatcher<>(recording(items -> {
+            List<RuntimeException> failures = noFailures(items);
+            if (items.contains(2)) failures.set(items.indexOf(2), duplicate);
+            return failures;
+        }), 3, Duration.ofMinutes(1));
+        CompletableFuture<Void> held = submitAll(batcher, HELD).get(0);
+        awaitBatches(1);
+
+        List<CompletableFuture<Void>> submits = submitAll(batcher, 1, 2, 3);
+
+        submits.get(0).get(5, TimeUnit.SECONDS);
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> submits.get(1).get(5, TimeUnit.SECONDS));
+        assertSame(duplicate, failure.getCause());
+        submits.get(2).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(1, 2, 3), sorted(batches.get(1)));
+
+        release.countDown();
+        held.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void failedBatchFailsAllSubmitters() {
+
+        EventBatcher<Integer> batcher = new EventBatcher<>(recording(items -> {
+            throw new IllegalStateException("Connection lost");
+        }), 2, Duration.ofMinutes(1));
+
+        List<CompletableFuture<Void>> submits = submitAll(batcher, 1, 2);
+
+        for (CompletableFuture<Void> submit : submits) {
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> submit.get(5, TimeUnit.SECONDS));
+            assertEquals("Connection lost", failure.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void missingResultsFailTheBatch() {
+
+        // A writer must report one result per item
+        EventBatcher<Integer> batcher = new EventBatcher<>(recording(items -> new ArrayList<>()), 1, Duration.ofMinutes(1));
+
+        assertThrows(EventProcessingException.class, () -> batcher.submit(1));
+    }
+
+    private EventBatcher.BatchWriter<Integer> recording(EventBatcher.BatchWriter<Integer> writer) {
+        return items -> {
+            batches.add(new ArrayList<>(items));
+            if (items.contains(HELD)) await(release);
+            return writer.write(items);
+        };
+    }
+
+    private static Mono<Void> submitted(EventBatcher<Integer> batcher, int item) {
+        return Mono.fromRunnable(() -> batcher.submit(item)).subscribeOn(Schedulers.boundedElastic()).then();
+    }
+
+    private static MessageHeaders headers(Channel channel, long deliveryTag) {
+        return new MessageHeaders(Map.of(AmqpHeaders.CHANNEL, channel, AmqpHeaders.DELIVERY_TAG, deliveryTag));
+    }
+
+    private void awaitBatches(int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (batches.size() < count && System.nanoTime() < deadline) Thread.yield();
+        assertEquals(count, batches.size());
+    }
+
+    private static void awaitOpenItems(EventBatcher<Integer> batcher, int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (batcher.openItems() < count && System.nanoTime() < deadline) Thread.yield();
+        assertEquals(count, batcher.openItems());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<RuntimeException> noFailures(List<Integer> items) {
+        return new ArrayList<>(Collections.nCopies(items.size(), null));
+    }
+
+    /**
+     * Submits each item from a thread of its own, as the listener threads of a binding do
+     */
+    private static List<CompletableFuture<Void>> submitAll(EventBatcher<Integer> batcher, Integer... items) {
+        List<CompletableFuture<Void>> submits = new ArrayList<>();
+        for (Integer item : items) {
+            CompletableFuture<Void> submit = new CompletableFuture<>();
+            Thread thread = new Thread(() -> {
+                try {
+                    batcher.submit(item);
+                    submit.complete(null);
+                } catch (RuntimeException ex) {
+                    submit.completeExceptionally(ex);
+                }
+            });
+            thread.start();
+            submits.add(submit);
+        }
+        return submits;
+    }
+
+    private static List<Integer> sorted(List<Integer> items) {
+        List<Integer> sorted = new ArrayList<>(items);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,129 @@
+package com.hoon.util.messaging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DedupWindowTests {
+
+    @Test
+    public void oldestIdIsEvictedWhenFull() {
+
+        DedupWindow window = new DedupWindow(3);
+        for (long id = 1; id <= 4; id++) assertTrue(window.add(id));
+
+        assertEquals(3, window.size());
+        assertFalse(window.contains(1));
+        assertTrue(window.contains(2));
+        assertTrue(window.contains(3));
+        assertTrue(window.contains(4));
+        assertArrayEquals(new long[] {2, 3, 4}, window.ids());
+    }
+
+    @Test
+    public void ringWrapsAround() {
+
+        DedupWindow window = new DedupWindow(3);
+        for (long id = 1; id <= 7; id++) window.add(id);
+
+        // The ring went round twice, the ids are still the last ones, oldest first
+        assertArrayEquals(new long[] {5, 6, 7}, window.ids());
+        for (long id = 1; id <= 4; id++) assertFalse(window.contains(id));
+        for (long id = 5; id <= 7; id++) assertTrue(window.contains(id));
+
+        // An id in the window is not added again and evicts nothing
+        assertFalse(window.add(6));
+        assertArrayEquals(new long[] {5, 6, 7}, window.ids());
+    }
+
+    @Test
+    public void idsOfACollisionChainAreFoundAfterEvictions() {
+
+        DedupWindow window = new DedupWindow(4);
+        int tableSize = 8;
+
+        // A chain in the middle of the table, and one wrapping around its end
+        for (int home : new int[] {2, tableSize - 1}) {
+            DedupWindow chain = new DedupWindow(4);
+
+            // a, b and c share a home slot, d has the next one and is pushed behind them
+            long[] sameHome = idsWithHome(window, home, 3);
+            long a = sameHome[0], b = sameHome[1], c = sameHome[2];
+            long d = idsWithHome(window, (home + 1) % tableSize, 1)[0];
+            long e = idsWithHome(window, (home + 4) % tableSize, 1)[0];
+            long f = idsWithHome(window, (home + 5) % tableSize, 1)[0];
+
+            for (long id : new long[] {a, b, c, d}) chain.add(id);
+
+            // Evicting the head of the chain shifts b, c and d back
+            chain.add(e);
+            assertFalse(chain.contains(a));
+            for (long id : new long[] {b, c, d, e}) assertTrue(chain.contains(id), "id " + id + ", home " + home);
+
+            chain.add(f);
+            assertFalse(chain.contains(b));
+            for (long id : new long[] {c, d, e, f}) assertTrue(chain.contains(id), "id " + id + ", home " + home);
+
+            // An evicted id can be added again
+            assertTrue(chain.add(a));
+            assertFalse(chain.contains(c));
+            for (long id : new long[] {d, e, f, a}) assertTrue(chain.contains(id), "id " + id + ", home " + home);
+        }
+    }
+
+    @Test
+    public void windowMatchesTheLastIds() {
+
+        // Few ids over a small table, with many collisions and evictions
+        int capacity = 16;
+        DedupWindow window = new DedupWindow(capacity);
+        Deque<Long> last = new ArrayDeque<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            long id = 1 + random.nextInt(64);
+
+            boolean added = window.add(id);
+            assertEquals(!last.contains(id), added);
+            if (added) {
+                last.addLast(id);
+                if (last.size() > capacity) last.removeFirst();
+            }
+
+            for (long candidate = 1; candidate <= 64; candidate++) {
+                assertEquals(last.contains(candidate), window.contains(candidate));
+            }
+        }
+        assertArrayEquals(last.stream().mapToLong(Long::longValue).toArray(), window.ids());
+    }
+
+    @Test
+    public void zeroIsNotAnId() {
+
+        DedupWindow window = new DedupWindow(3);
+
+        assertFalse(window.contains(0));
+        assertThrows(IllegalArgumentException.class, () -> window.add(0));
+        assertThrows(IllegalArgumentException.class, () -> new DedupWindow(0));
+    }
+
+    /**
+     * @return the first count ids whose home slot is home, in a window of the same capacity
+     */
+    private static long[] idsWithHome(DedupWindow window, int home, int count) {
+        long[] ids = new long[count];
+        int found = 0;
+        for (long id = 1; found < count; id++) {
+            if (window.hash(id) == home) ids[found++] = id;
+        }
+        return ids;
+    }
+}
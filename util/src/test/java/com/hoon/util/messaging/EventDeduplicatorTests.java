@@ -0,0 +1,72 @@
+package com.hoon.util.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EventDeduplicatorTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void windowIsSavedPeriodicallyAndLoadedOnStartup() throws Exception {
+
+        Path snapshot = dir.resolve("dedup.bin");
+        EventDeduplicator deduplicator = deduplicator(snapshot, Duration.ofMillis(50));
+        deduplicator.afterPropertiesSet();
+        deduplicator.processed(1);
+        deduplicator.processed(2);
+
+        // Written without a shutdown, as if the service crashed afterwards: the count and the two ids
+        long deadline = System.currentTimeMillis() + 5000;
+        while (snapshotSize(snapshot) < 4 + 2 * 8 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertEquals(4 + 2 * 8, snapshotSize(snapshot));
+
+        EventDeduplicator restarted = deduplicator(snapshot, Duration.ofMinutes(1));
+        restarted.afterPropertiesSet();
+        try {
+            assertTrue(restarted.isDuplicate(1));
+            assertTrue(restarted.isDuplicate(2));
+            assertFalse(restarted.isDuplicate(3));
+        } finally {
+            deduplicator.destroy();
+            restarted.destroy();
+        }
+    }
+
+    @Test
+    public void windowIsSavedOnShutdown() throws Exception {
+
+        Path snapshot = dir.resolve("dedup.bin");
+        EventDeduplicator deduplicator = deduplicator(snapshot, Duration.ofMinutes(1));
+        deduplicator.afterPropertiesSet();
+        deduplicator.processed(1);
+        deduplicator.destroy();
+
+        EventDeduplicator restarted = deduplicator(snapshot, Duration.ofMinutes(1));
+        restarted.afterPropertiesSet();
+        try {
+            assertTrue(restarted.isDuplicate(1));
+        } finally {
+            restarted.destroy();
+        }
+    }
+
+    private static long snapshotSize(Path snapshot) throws IOException {
+        return Files.exists(snapshot) ? Files.size(snapshot) : 0;
+    }
+
+    private static EventDeduplicator deduplicator(Path snapshot, Duration snapshotInterval) {
+        return new EventDeduplicator(new SimpleMeterRegistry(), true, 100, snapshot.toString(), snapshotInterval);
+    }
+}
@@ -0,0 +1,142 @@
+package com.hoon.util.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.MessageHeaders;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class ManualAckProcessorTests {
+
+    private final Channel channel = mock(Channel.class);
+    private final ManualAckProcessor processor = new ManualAckProcessor("test", Retry.backoff(2, Duration.ofMillis(10)),
+            new ObjectMapper(), "DLX", "products.productsGroup");
+    private final List<String> processed = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void messagesOfAKeyAreProcessedInOrder() throws IOException {
+
+        // The first message is the slowest, the later ones still wait for it
+        processor.process(1, "create", record("create", Duration.ofMillis(200)), headers(1));
+        processor.process(1, "delete", record("delete", Duration.ZERO), headers(2));
+        processor.process(1, "create again", record("create again", Duration.ofMillis(50)), headers(3));
+
+        verify(channel, timeout(5000)).basicAck(3, false);
+        verify(channel, timeout(5000)).basicAck(1, false);
+        verify(channel, timeout(5000)).basicAck(2, false);
+        assertEquals(List.of("create", "delete", "create again"), processed);
+    }
+
+    @Test
+    public void sharedMessagesOfAKeyAreProcessedConcurrently() throws IOException {
+
+        // The creates do not wait for each other, the delete waits for both and the next create for the delete
+        processor.process(1, false, "create 1", record("create 1", Duration.ofMillis(200)), headers(1));
+        processor.process(1, false, "create 2", record("create 2", Duration.ZERO), headers(2));
+        processor.process(1, true, "delete", record("delete", Duration.ZERO), headers(3));
+        processor.process(1, false, "create again", record("create again", Duration.ZERO), headers(4));
+
+        for (long deliveryTag = 1; deliveryTag <= 4; deliveryTag++) verify(channel, timeout(5000)).basicAck(deliveryTag, false);
+        assertEquals(List.of("create 2", "create 1", "delete", "create again"), processed);
+    }
+
+    @Test
+    public void messagesOfDifferentKeysAreProcessedConcurrently() throws IOException {
+
+        processor.process(1, "slow", record("slow", Duration.ofMillis(500)), headers(1));
+        processor.process(2, "fast", record("fast", Duration.ZERO), headers(2));
+
+        verify(channel, timeout(5000)).basicAck(1, false);
+        assertEquals(List.of("fast", "slow"), processed);
+    }
+
+    @Test
+    public void failedMessageIsRepublishedToTheDlq() throws IOException {
+
+        AtomicInteger attempts = new AtomicInteger();
+        processor.process(1, Map.of("productId", 1), Mono.defer(() -> {
+            attempts.incrementAndGet();
+            return Mono.error(new IllegalStateException("Duplicate key"));
+        }), headers(1));
+
+        // The next message of the key is processed once the failed one is dead lettered
+        processor.process(1, "next", record("next", Duration.ZERO), headers(2));
+        verify(channel, timeout(5000)).basicAck(2, false);
+
+        ArgumentCaptor<AMQP.BasicProperties> properties = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        ArgumentCaptor<byte[]> body = ArgumentCaptor.forClass(byte[].class);
+        verify(channel, timeout(5000)).basicPublish(eq("DLX"), eq("products.productsGroup"), properties.capture(), body.capture());
+        verify(channel, timeout(5000)).basicAck(1, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+
+        assertEquals(3, attempts.get());
+        assertEquals("{\"productId\":1}", new String(body.getValue()));
+        Map<String, Object> dlqHeaders = properties.getValue().getHeaders();
+        assertEquals("Duplicate key", dlqHeaders.get("x-exception-message"));
+        assertEquals("products", dlqHeaders.get("x-original-exchange"));
+        assertEquals("#", dlqHeaders.get("x-original-routingKey"));
+        assertEquals(true, ((String) dlqHeaders.get("x-exception-stacktrace")).startsWith("java.lang.IllegalStateException: Duplicate key"));
+        assertEquals(List.of("next"), processed);
+    }
+
+    @Test
+    public void failedRepublishRejectsTheMessage() throws IOException {
+
+        doThrow(new IOException("channel closed")).when(channel).basicPublish(any(), any(), any(), any());
+
+        processor.process(1, "event", Mono.error(new IllegalStateException("failed")), headers(1));
+
+        // Dead lettered by the queue instead, without the exception headers
+        verify(channel, timeout(5000)).basicNack(1, false, false);
+        verify(channel, never()).basicAck(1, false);
+    }
+
+    @Test
+    public void acknowledgeAcksWithoutProcessing() throws IOException {
+
+        processor.acknowledge(headers(7));
+
+        verify(channel, timeout(5000)).basicAck(7, false);
+    }
+
+    @Test
+    public void onlyMessagesWithAChannelAreAckedManually() {
+
+        assertEquals(true, ManualAckProcessor.isManualAck(headers(1)));
+        assertEquals(false, ManualAckProcessor.isManualAck(new MessageHeaders(Map.of())));
+    }
+
+    private Mono<Void> record(String name, Duration delay) {
+        return Mono.delay(delay).doOnNext(t -> processed.add(name)).then();
+    }
+
+    private MessageHeaders headers(long deliveryTag) {
+        return new MessageHeaders(Map.of(
+                AmqpHeaders.CHANNEL, channel,
+                AmqpHeaders.DELIVERY_TAG, deliveryTag,
+                AmqpHeaders.RECEIVED_EXCHANGE, "products",
+                AmqpHeaders.RECEIVED_ROUTING_KEY, "#"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.hoon.util.reactor;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StageMetricsTests {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void completedFluxIsMeasured() {
+
+        StageMetrics stageMetrics = new StageMetrics(meterRegistry, 1);
+
+        StepVerifier.create(Flux.range(1, 3).transform(stageMetrics.flux("test.flux")))
+                .expectNext(1, 2, 3)
+                .verifyComplete();
+
+        Timer latency = latency("test.flux", "complete");
+        assertEquals(1, latency.count());
+        assertEquals(1, elements("test.flux", "complete").count());
+        assertEquals(3, elements("test.flux", "complete").totalAmount());
+    }
+
+    @Test
+    public void outcomeIsTagged() {
+
+        StageMetrics stageMetrics = new StageMetrics(meterRegistry, 1);
+
+        StepVerifier.create(Mono.just(1).transform(stageMetrics.mono("test.stage")))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(Mono.error(new IllegalStateException()).transform(stageMetrics.mono("test.stage")))
+                .verifyError(IllegalStateException.class);
+        StepVerifier.create(Flux.range(1, 10).transform(stageMetrics.flux("test.stage")).take(2))
+                .expectNext(1, 2)
+                .verifyComplete();
+
+        assertEquals(1, latency("test.stage", "complete").count());
+        assertEquals(1, latency("test.stage", "error").count());
+        assertEquals(1, latency("test.stage", "cancel").count());
+        assertEquals(0, elements("test.stage", "error").totalAmount());
+        assertEquals(2, elements("test.stage", "cancel").totalAmount());
+    }
+
+    @Test
+    public void nothingIsMeasuredWithoutSampling() {
+
+        StageMetrics stageMetrics = new StageMetrics(meterRegistry, 0);
+
+        StepVerifier.create(Flux.range(1, 3).transform(stageMetrics.flux("test.off")))
+                .expectNextCount(3)
+                .verifyComplete();
+
+        assertNull(meterRegistry.find("reactor.stage.latency").timer());
+        assertNull(meterRegistry.find("reactor.stage.elements").summary());
+    }
+
+    @Test
+    public void sampleRateOutOfRange() {
+
+        assertThrows(IllegalArgumentException.class, () -> new StageMetrics(meterRegistry, -0.1));
+        assertThrows(IllegalArgumentException.class, () -> new StageMetrics(meterRegistry, 1.1));
+    }
+
+    private Timer latency(String stage, String outcome) {
+        return meterRegistry.get("reactor.stage.latency").tags("stage", stage, "outcome", outcome).timer();
+    }
+
+    private DistributionSummary elements(String stage, String outcome) {
+        return meterRegistry.get("reactor.stage.elements").tags("stage", stage, "outcome", outcome).summary();
+    }
+}